@@ -0,0 +1,140 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Allocation regression check for the game's hot paths.
+ *
+ * <p>Runs each operation until the JIT has settled, then measures the bytes
+ * the thread allocates per operation over several rounds and keeps the
+ * lowest, so a stray deoptimization does not fail the check. Exits with
+ * status 1 if any operation allocates more than its budget, so it can gate a
+ * build.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java AllocationBudget [NAME...]
+ * </pre>
+ * Checks the named operations, or all of them. A budget in bytes per
+ * operation can be changed with {@code -Dconnect4.budget.NAME=BYTES}, such as
+ * {@code -Dconnect4.budget.Game.takeTurn=0}.
+ */
+public class AllocationBudget {
+    private static final long WARMUP_MILLIS = 1000;
+    private static final int OPERATIONS_PER_ROUND = 100_000;
+    private static final int ROUNDS = 5;
+    // Reaches wins and full columns quickly on every board size
+    private static final int[] MOVES = {3, 3, 2, 4, 1, 5, 0, 6, 3, 3, 2, 2, 4, 4, 1, 1};
+
+    private static final Map<String, IntConsumer> CHECKS = new LinkedHashMap<>();
+    private static final Map<String, Long> BUDGETS = new LinkedHashMap<>();
+    // Keeps results alive so the JIT cannot drop the work
+    private static long sink;
+
+    static {
+        // Moves are free once the board exists; JSON is built with String.format
+        add("Game.takeTurn", 16, moves(new Game("Player1", "Player2", Checker.RED)));
+        add("Game.takeTurn.8x7", 16, moves(new Game("Player1", "Player2", Checker.RED, BoardSize.parse("8x7"))));
+        add("Game.takeTurn.9x7:5", 16, moves(new Game("Player1", "Player2", Checker.RED, BoardSize.parse("9x7:5"))));
+        add("Game.getGameStateJson", 5 * 1024, json(new Game("Player1", "Player2", Checker.RED)));
+        add("ConnectFourImpl.takeTurn", 6 * 1024, apiMoves(new ConnectFourImpl()));
+        add("ConnectFourImpl.getGameState", 5 * 1024, apiState(new ConnectFourImpl()));
+    }
+
+    public static void main(String[] args) {
+        if (Diagnostics.allocatedBytes() < 0) {
+            System.out.println("This JVM does not count allocated bytes per thread");
+            System.exit(1);
+        }
+        if (args.length == 0) {
+            args = CHECKS.keySet().toArray(new String[0]);
+        }
+        int failures = 0;
+        for (String name : args) {
+            IntConsumer check = CHECKS.get(name);
+            if (check == null) {
+                System.out.println("Unknown check " + name + ", expected one of " + CHECKS.keySet());
+                failures++;
+                continue;
+            }
+            long budget = Long.getLong("connect4.budget." + name, BUDGETS.get(name));
+            double bytes = measure(check);
+            boolean over = bytes > budget;
+            System.out.printf("%-30s %10.1f bytes/op   budget %6d   %s%n", name, bytes, budget, over ? "OVER" : "ok");
+            if (over) {
+                failures++;
+            }
+        }
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+    }
+
+    private static void add(String name, long budget, IntConsumer check) {
+        CHECKS.put(name, check);
+        BUDGETS.put(name, budget);
+    }
+
+    // Lowest bytes per operation over the rounds, after warming up
+    private static double measure(IntConsumer check) {
+        long end = System.nanoTime() + WARMUP_MILLIS * 1_000_000;
+        while (System.nanoTime() < end) {
+            check.accept(OPERATIONS_PER_ROUND);
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = Diagnostics.allocatedBytes();
+            check.accept(OPERATIONS_PER_ROUND);
+            best = Math.min(best, Diagnostics.allocatedBytes() - before);
+        }
+        return (double) best / OPERATIONS_PER_ROUND;
+    }
+
+    // Moves, starting a new game in place whenever one is over
+    private static IntConsumer moves(Game game) {
+        int[] ply = {0};
+        return operations -> {
+            for (int i = 0; i < operations; i++) {
+                int column = MOVES[ply[0]++ & MOVES.length - 1];
+                if (!game.takeTurn(column) || game.isGameOver()) {
+                    game.reset("Player1", "Player2", Checker.RED);
+                }
+            }
+            sink += game.getVersion();
+        };
+    }
+
+    private static IntConsumer json(Game game) {
+        game.playMoves("3324");
+        return operations -> {
+            for (int i = 0; i < operations; i++) {
+                sink += game.getGameStateJson().length();
+            }
+        };
+    }
+
+    private static IntConsumer apiMoves(ConnectFourImpl api) {
+        api.startGame("Player1", "Player2");
+        int[] ply = {0};
+        return operations -> {
+            for (int i = 0; i < operations; i++) {
+                String state = api.takeTurn(MOVES[ply[0]++ & MOVES.length - 1]);
+                if (state.contains("error") || api.getGame().isGameOver()) {
+                    api.resetGame();
+                }
+                sink += state.length();
+            }
+        };
+    }
+
+    private static IntConsumer apiState(ConnectFourImpl api) {
+        api.startGame("Player1", "Player2");
+        api.playMoves("3324");
+        return operations -> {
+            for (int i = 0; i < operations; i++) {
+                sink += api.getGameState().length();
+            }
+        };
+    }
+}
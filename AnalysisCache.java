@@ -0,0 +1,263 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache of analysis results by position, shared by the
+ * computer players and analyzers so positions reached in many games, such as
+ * common openings, are only searched once.
+ *
+ * <p>Entries are keyed by {@link Position#canonicalKey()}, so a position and
+ * its mirror image share an entry; best moves are stored for the canonical
+ * orientation and translated back on lookup. Each entry also records what
+ * produced it, one of {@link #SEARCH}, {@link #EXACT} or {@link #PLAYOUTS},
+ * since their scores and depths mean different things.</p>
+ *
+ * <p>The cache is split into independently locked shards. Within a shard,
+ * entries live in sets of {@value #WAYS}; a full set evicts with the CLOCK
+ * algorithm, skipping and clearing entries used since the hand last passed.
+ * Entries take 16 bytes each in two parallel arrays, so the memory limit is
+ * exact and lookups allocate nothing.</p>
+ */
+public final class AnalysisCache {
+    /** Entries from {@link Searcher}: score as in {@link AnalysisResult}, depth in plies. */
+    public static final int SEARCH = 1;
+    /** Entries from {@link Solver}: exact score; the best move may be unknown. */
+    public static final int EXACT = 2;
+    /** Entries from {@link MctsPlayer}: no score; depth is log2 of the playout limit. */
+    public static final int PLAYOUTS = 3;
+
+    /** Returned by {@link #get(Position, int)} when there is no entry. */
+    public static final long MISS = 0;
+
+    /** Size of the process-wide cache, overridable with -Dconnect4.analysisCacheMb. */
+    public static final int DEFAULT_MEGABYTES = 64;
+
+    private static final int WAYS = 8;
+    private static final int SHARDS = 64;
+    private static final long USED = 1L << 63;
+
+    // Value layout: best move + 1 (4 bits), kind (4 bits), depth (8 bits),
+    // score (32 bits), and the CLOCK reference bit at the top
+    private static final int KIND_SHIFT = 4;
+    private static final int DEPTH_SHIFT = 8;
+    private static final int SCORE_SHIFT = 16;
+
+    private static final class Holder {
+        static final AnalysisCache SHARED =
+                new AnalysisCache(Integer.getInteger("connect4.analysisCacheMb", DEFAULT_MEGABYTES));
+    }
+
+    private static final class Shard {
+        final long[] keys;
+        final long[] values;
+        final byte[] hands;
+
+        Shard(int sets) {
+            keys = new long[sets * WAYS];
+            values = new long[sets * WAYS];
+            hands = new byte[sets];
+        }
+    }
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final int setMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param megabytes memory for entries; at least one set per shard is kept
+     */
+    public AnalysisCache(int megabytes) {
+        long entries = (long) megabytes << 20 >> 4;
+        long setsPerShard = Math.max(1, entries / WAYS / SHARDS);
+        int sets = (int) Math.min(1 << 24, Long.highestOneBit(setsPerShard));
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(sets);
+        }
+        this.setMask = sets - 1;
+    }
+
+    /**
+     * Returns the process-wide cache, created on first use.
+     */
+    public static AnalysisCache shared() {
+        return Holder.SHARED;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param kind the kind of entry wanted
+     * @return the entry, with its best move for this position's orientation,
+     *         or {@link #MISS}; read it with {@link #bestMove(long)},
+     *         {@link #score(long)} and {@link #depth(long)}
+     */
+    public long get(Position position, int kind) {
+        long key = position.canonicalKey();
+        long hash = hash(key, kind);
+        Shard shard = shards[(int) (hash >>> 58)];
+        int base = ((int) hash & setMask) * WAYS;
+        long value = MISS;
+        synchronized (shard) {
+            for (int i = base; i < base + WAYS; i++) {
+                if (shard.keys[i] == key && kindOf(shard.values[i]) == kind) {
+                    shard.values[i] |= USED;
+                    value = shard.values[i] & ~USED;
+                    break;
+                }
+            }
+        }
+        if (value == MISS) {
+            misses.increment();
+            return MISS;
+        }
+        hits.increment();
+        int move = bestMove(value);
+        if (move >= 0 && position.isMirroredCanonical()) {
+            value = withMove(value, BitBoard.mirrorColumn(move));
+        }
+        return value;
+    }
+
+    /**
+     * Stores a result for a position. An existing entry of the same kind is
+     * kept if it is deeper; at equal depth a known best move is never replaced
+     * by an unknown one.
+     *
+     * @param bestMove the best column for this position's orientation, or -1 if unknown
+     */
+    public void put(Position position, int kind, int bestMove, int score, int depth) {
+        long key = position.canonicalKey();
+        int move = bestMove >= 0 ? position.canonicalColumn(bestMove) : -1;
+        long value = pack(kind, move, score, Math.min(255, Math.max(0, depth)));
+        long hash = hash(key, kind);
+        Shard shard = shards[(int) (hash >>> 58)];
+        int set = (int) hash & setMask;
+        int base = set * WAYS;
+        synchronized (shard) {
+            int free = -1;
+            for (int i = base; i < base + WAYS; i++) {
+                if (shard.keys[i] == key && kindOf(shard.values[i]) == kind) {
+                    long old = shard.values[i];
+                    if (depth(old) > depth(value)) {
+                        return;
+                    }
+                    if (depth(old) == depth(value) && move < 0) {
+                        value = withMove(value, bestMove(old));
+                    }
+                    shard.values[i] = value | (old & USED);
+                    return;
+                }
+                if (free < 0 && shard.keys[i] == 0) {
+                    free = i;
+                }
+            }
+            if (free < 0) {
+                free = victim(shard, set);
+                evictions.increment();
+            }
+            shard.keys[free] = key;
+            shard.values[free] = value;
+        }
+    }
+
+    // CLOCK over one set: clear reference bits until an unreferenced way is found
+    private static int victim(Shard shard, int set) {
+        int base = set * WAYS;
+        while (true) {
+            int hand = shard.hands[set];
+            shard.hands[set] = (byte) ((hand + 1) & (WAYS - 1));
+            int i = base + hand;
+            if ((shard.values[i] & USED) == 0) {
+                return i;
+            }
+            shard.values[i] &= ~USED;
+        }
+    }
+
+    /**
+     * Removes every entry. Metrics are kept.
+     */
+    public void clear() {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                Arrays.fill(shard.keys, 0);
+                Arrays.fill(shard.values, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the best move of an entry, or -1 if unknown.
+     */
+    public static int bestMove(long entry) {
+        return (int) (entry & 0xF) - 1;
+    }
+
+    public static int score(long entry) {
+        return (int) (entry >>> SCORE_SHIFT);
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    /**
+     * Returns the number of entries the cache can hold.
+     */
+    public long getCapacity() {
+        return (long) SHARDS * (setMask + 1) * WAYS;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the share of lookups that found an entry, or 0 before any lookup.
+     */
+    public double getHitRate() {
+        long found = hits.sum();
+        long total = found + misses.sum();
+        return total == 0 ? 0 : (double) found / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AnalysisCache[%d entries, %d hits, %d misses (%.1f%% hits), %d evictions]",
+                getCapacity(), getHits(), getMisses(), 100 * getHitRate(), getEvictions());
+    }
+
+    private static long pack(int kind, int move, int score, int depth) {
+        return (move + 1) | (long) kind << KIND_SHIFT | (long) depth << DEPTH_SHIFT
+                | (score & 0xFFFFFFFFL) << SCORE_SHIFT;
+    }
+
+    private static long withMove(long value, int move) {
+        return (value & ~0xFL) | (move + 1);
+    }
+
+    private static int kindOf(long value) {
+        return (int) (value >>> KIND_SHIFT) & 0xF;
+    }
+
+    // Murmur3 finalizer; high bits pick the shard, low bits the set
+    private static long hash(long key, int kind) {
+        long h = key * 31 + kind;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * Receives the progress of a {@link PositionAnalyzer} analysis.
+ *
+ * <p>Callbacks run on the analysis thread, so they should return quickly.</p>
+ */
+public interface AnalysisListener {
+
+    /**
+     * Called each time a search depth completes.
+     *
+     * @param result the best move, score and principal variation at that depth
+     */
+    void onDepthCompleted(AnalysisResult result);
+
+    /**
+     * Called once when the analysis stops, because the position was fully
+     * searched, the time budget ran out, or it was cancelled.
+     *
+     * @param result the deepest completed result, or null if none completed
+     * @param cancelled true if the analysis was cancelled
+     */
+    default void onFinished(AnalysisResult result, boolean cancelled) {
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.Arrays;
+
+/**
+ * The outcome of searching a position to a given depth.
+ *
+ * <p>Scores are from the point of view of the side to move. A positive score
+ * greater than {@link #DECISIVE} is a forced win, and the closer it is to
+ * {@link Searcher#WIN_SCORE} the sooner the win. Smaller scores are heuristic
+ * estimates.</p>
+ */
+public final class AnalysisResult {
+    /** Scores beyond this magnitude are forced wins or losses. */
+    public static final int DECISIVE = Searcher.WIN_SCORE - BitBoard.ROWS * BitBoard.COLUMNS - 1;
+
+    private final int depth;
+    private final int bestMove;
+    private final int score;
+    private final int[] principalVariation;
+    private final long nodes;
+    private final long elapsedNanos;
+
+    public AnalysisResult(int depth, int bestMove, int score, int[] principalVariation, long nodes, long elapsedNanos) {
+        this.depth = depth;
+        this.bestMove = bestMove;
+        this.score = score;
+        this.principalVariation = principalVariation;
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the best column found, or -1 if the position is already over.
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the expected line of play starting with the best move.
+     */
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns true if the score is a forced win or loss rather than an estimate.
+     */
+    public boolean isDecisive() {
+        return Math.abs(score) > DECISIVE;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d best %d score %d pv %s nodes %d",
+                depth, bestMove, score, Arrays.toString(principalVariation), nodes);
+    }
+}
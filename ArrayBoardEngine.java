@@ -0,0 +1,135 @@
+import java.util.Arrays;
+
+/**
+ * {@link BoardEngine} for boards of any size, one byte per cell.
+ *
+ * <p>Lines are found by counting outwards from the stone just dropped in
+ * each of the four directions, so a check costs {@code O(connect)} however
+ * large the board.</p>
+ */
+final class ArrayBoardEngine implements BoardEngine {
+    private static final byte EMPTY = -1;
+    // Row and column steps of the four line directions: across, down and both diagonals
+    private static final int[] ROW_STEPS = {0, 1, 1, 1};
+    private static final int[] COLUMN_STEPS = {1, 0, 1, -1};
+
+    private final BoardSize size;
+    private final int rows;
+    private final int columns;
+    private final int connect;
+    private final byte[] cells;
+    // Stones in each column
+    private final int[] heights;
+    private int stoneCount;
+
+    ArrayBoardEngine(BoardSize size) {
+        this.size = size;
+        this.rows = size.getRows();
+        this.columns = size.getColumns();
+        this.connect = size.getConnect();
+        this.cells = new byte[size.getCells()];
+        this.heights = new int[columns];
+        clear();
+    }
+
+    @Override
+    public BoardSize getSize() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cells, EMPTY);
+        Arrays.fill(heights, 0);
+        stoneCount = 0;
+    }
+
+    @Override
+    public int drop(int column, int player) {
+        if (heights[column] == rows) {
+            return -1;
+        }
+        int row = rows - 1 - heights[column];
+        cells[row * columns + column] = (byte) player;
+        heights[column]++;
+        stoneCount++;
+        return row;
+    }
+
+    @Override
+    public void set(int row, int column, int player) {
+        int index = row * columns + column;
+        if (cells[index] == EMPTY) {
+            stoneCount++;
+        }
+        cells[index] = (byte) player;
+        heights[column] = Math.max(heights[column], rows - row);
+    }
+
+    @Override
+    public int get(int row, int column) {
+        return cells[row * columns + column];
+    }
+
+    @Override
+    public boolean completesLine(int row, int column) {
+        int player = get(row, column);
+        if (player == EMPTY) {
+            return false;
+        }
+        for (int d = 0; d < ROW_STEPS.length; d++) {
+            int length = 1 + count(row, column, ROW_STEPS[d], COLUMN_STEPS[d], player)
+                    + count(row, column, -ROW_STEPS[d], -COLUMN_STEPS[d], player);
+            if (length >= connect) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Stones of the player in a row from a cell, not counting the cell itself
+    private int count(int row, int column, int rowStep, int columnStep, int player) {
+        int result = 0;
+        int r = row + rowStep;
+        int c = column + columnStep;
+        while (result < connect && r >= 0 && r < rows && c >= 0 && c < columns && cells[r * columns + c] == player) {
+            result++;
+            r += rowStep;
+            c += columnStep;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isFull() {
+        return stoneCount == cells.length;
+    }
+
+    @Override
+    public int legalColumns() {
+        int result = 0;
+        for (int col = 0; col < columns; col++) {
+            if (heights[col] < rows) {
+                result |= 1 << col;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int winningColumns(int player) {
+        int result = 0;
+        for (int col = 0; col < columns; col++) {
+            if (heights[col] < rows) {
+                int row = rows - 1 - heights[col];
+                int index = row * columns + col;
+                cells[index] = (byte) player;
+                if (completesLine(row, col)) {
+                    result |= 1 << col;
+                }
+                cells[index] = EMPTY;
+            }
+        }
+        return result;
+    }
+}
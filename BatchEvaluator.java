@@ -0,0 +1,161 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates large batches of positions in parallel, for generating labelled
+ * training data.
+ *
+ * <p>Each position is searched to a fixed depth with a {@link Searcher}. The
+ * batch is split into chunks on a work-stealing pool, so workers that finish
+ * easy positions early take over chunks from the others. Results are written
+ * into arrays the caller allocates once and reuses across batches; index
+ * {@code i} of each array holds the result for input {@code i}.</p>
+ *
+ * <pre>{@code
+ * BatchEvaluator evaluator = new BatchEvaluator(Runtime.getRuntime().availableProcessors());
+ * evaluator.evaluate(moveStrings, 8, scores, bestColumns, depths);
+ * }</pre>
+ */
+public class BatchEvaluator {
+    /** Positions searched by one task before it stops splitting. */
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+    /** Score written for an input that is not a legal position. */
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    private static final Position EMPTY = new Position();
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Searcher> searchers = ThreadLocal.withInitial(Searcher::new);
+    private final ThreadLocal<Position> positions = ThreadLocal.withInitial(Position::new);
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * @param threads number of worker threads
+     */
+    public BatchEvaluator(int threads) {
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Sets how many positions one task searches; smaller chunks balance
+     * better, larger ones split less.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Evaluates positions given as move strings in {@link MoveNotation}.
+     *
+     * <p>A string with a bad digit, an illegal move or a move after the game
+     * was won gets score {@link #INVALID}, best column -1 and depth -1.</p>
+     *
+     * @param depth plies to search, at least 1
+     * @param scores receives each score, as in {@link AnalysisResult#getScore()}
+     * @param bestColumns receives each best column, or -1 if the game is over
+     * @param depths receives the depth searched, 0 if the game is over
+     * @throws IllegalArgumentException if an output array is shorter than the input
+     */
+    public void evaluate(String[] moveStrings, int depth, int[] scores, int[] bestColumns, int[] depths) {
+        run(new Chunk(moveStrings, null, 0, moveStrings.length, depth, scores, bestColumns, depths));
+    }
+
+    /**
+     * Evaluates positions given as {@link Position#key()}s, the compact form
+     * used by {@link PositionDatabase}. Keys are not validated.
+     *
+     * @see #evaluate(String[], int, int[], int[], int[])
+     */
+    public void evaluate(long[] keys, int depth, int[] scores, int[] bestColumns, int[] depths) {
+        run(new Chunk(null, keys, 0, keys.length, depth, scores, bestColumns, depths));
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void run(Chunk batch) {
+        if (batch.depth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1");
+        }
+        int length = batch.end;
+        if (batch.scores.length < length || batch.bestColumns.length < length || batch.depths.length < length) {
+            throw new IllegalArgumentException("Result arrays are shorter than the batch");
+        }
+        pool.invoke(batch);
+    }
+
+    // Plays a move string onto the empty position; false if it is not a legal game
+    private static boolean playMoves(Position position, String moves) {
+        position.set(EMPTY);
+        for (int i = 0; i < moves.length(); i++) {
+            int col = MoveNotation.columnOf(moves.charAt(i));
+            if (col < 0 || !position.canPlay(col) || position.isTerminal()) {
+                return false;
+            }
+            position.play(col);
+        }
+        return true;
+    }
+
+    private final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final String[] moveStrings;
+        final long[] keys;
+        final int begin;
+        final int end;
+        final int depth;
+        final int[] scores;
+        final int[] bestColumns;
+        final int[] depths;
+
+        Chunk(String[] moveStrings, long[] keys, int begin, int end, int depth,
+                int[] scores, int[] bestColumns, int[] depths) {
+            this.moveStrings = moveStrings;
+            this.keys = keys;
+            this.begin = begin;
+            this.end = end;
+            this.depth = depth;
+            this.scores = scores;
+            this.bestColumns = bestColumns;
+            this.depths = depths;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - begin > chunkSize) {
+                int middle = (begin + end) >>> 1;
+                invokeAll(split(begin, middle), split(middle, end));
+                return;
+            }
+            Searcher searcher = searchers.get();
+            Position position = positions.get();
+            for (int i = begin; i < end; i++) {
+                if (keys != null) {
+                    position.setKey(keys[i]);
+                } else if (!playMoves(position, moveStrings[i])) {
+                    scores[i] = INVALID;
+                    bestColumns[i] = -1;
+                    depths[i] = -1;
+                    continue;
+                }
+                AnalysisResult result = searcher.search(position, depth, -1);
+                scores[i] = result.getScore();
+                bestColumns[i] = result.getBestMove();
+                depths[i] = result.getDepth();
+            }
+        }
+
+        private Chunk split(int from, int to) {
+            return new Chunk(moveStrings, keys, from, to, depth, scores, bestColumns, depths);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Win, full-board and legal-move detection for many boards at once.
+ *
+ * <p>Boards are passed as parallel {@code long[]} lanes of {@link BitBoard}s,
+ * one element per board, and each method fills an output lane for the first
+ * {@code count} boards. The loops are branch-free, straight-line shifts and
+ * masks over arrays, which HotSpot's C2 compiler turns into SIMD
+ * instructions, so a batch costs a fraction of checking its boards one by
+ * one. Output lanes must be separate arrays from the input lanes.</p>
+ *
+ * <pre>{@code
+ * BatchWinDetector.fours(redStones, won, count);
+ * BatchWinDetector.playableCells(masks, playable, count);
+ * for (int i = 0; i < count; i++) {
+ *     boolean over = won[i] != 0 || playable[i] == 0;
+ * }
+ * }</pre>
+ */
+public final class BatchWinDetector {
+    private static final long BOARD_MASK = BitBoard.BOARD_MASK;
+    private static final long BOTTOM_MASK = BitBoard.BOTTOM_MASK;
+    private static final int H = BitBoard.HEIGHT;
+
+    private BatchWinDetector() {
+    }
+
+    /**
+     * Finds four in a row. Sets {@code fours[i]} to the first cell, in bit
+     * order, of every line of four in {@code stones[i]}, so it is non-zero
+     * exactly when {@link BitBoard#hasFour(long)} is true.
+     */
+    public static void fours(long[] stones, long[] fours, int count) {
+        for (int i = 0; i < count; i++) {
+            long s = stones[i];
+            long pairs = s & (s >>> 1);
+            long result = pairs & (pairs >>> 2);
+            pairs = s & (s >>> H);
+            result |= pairs & (pairs >>> 2 * H);
+            pairs = s & (s >>> (H - 1));
+            result |= pairs & (pairs >>> 2 * (H - 1));
+            pairs = s & (s >>> (H + 1));
+            result |= pairs & (pairs >>> 2 * (H + 1));
+            fours[i] = result;
+        }
+    }
+
+    /**
+     * Finds legal moves. Sets {@code playable[i]} to the cells a checker would
+     * land in, one per non-full column, which is 0 exactly when board
+     * {@code i} is full. {@link BitBoard#columnsOf(long)} turns it into
+     * columns.
+     */
+    public static void playableCells(long[] masks, long[] playable, int count) {
+        for (int i = 0; i < count; i++) {
+            playable[i] = (masks[i] + BOTTOM_MASK) & BOARD_MASK;
+        }
+    }
+
+    /**
+     * Finds immediate wins. Sets {@code winning[i]} to the playable cells
+     * that complete four in a row for {@code stones[i]}, 0 if there are none.
+     */
+    public static void winningCells(long[] stones, long[] masks, long[] winning, int count) {
+        // One pass per direction: C2 only unrolls, and so vectorizes, small loop bodies
+        for (int i = 0; i < count; i++) {
+            long s = stones[i];
+            winning[i] = (s << 1) & (s << 2) & (s << 3);
+        }
+        for (int i = 0; i < count; i++) {
+            winning[i] |= lineCompletions(stones[i], H);
+        }
+        for (int i = 0; i < count; i++) {
+            winning[i] |= lineCompletions(stones[i], H - 1);
+        }
+        for (int i = 0; i < count; i++) {
+            winning[i] |= lineCompletions(stones[i], H + 1);
+        }
+        for (int i = 0; i < count; i++) {
+            winning[i] &= (masks[i] + BOTTOM_MASK) & BOARD_MASK;
+        }
+    }
+
+    /**
+     * Returns how many of the first {@code count} values are non-zero, for
+     * example the number of won boards after {@link #fours}.
+     */
+    public static int countNonZero(long[] values, int count) {
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            total += (int) ((values[i] | -values[i]) >>> 63);
+        }
+        return total;
+    }
+
+    // Same as BitBoard.winningCells, without the final mask
+    private static long lineCompletions(long s, int shift) {
+        long pair = (s << shift) & (s << 2 * shift);
+        long result = pair & (s << 3 * shift);
+        result |= pair & (s >>> shift);
+        pair = (s >>> shift) & (s >>> 2 * shift);
+        result |= pair & (s << shift);
+        result |= pair & (s >>> 3 * shift);
+        return result;
+    }
+}
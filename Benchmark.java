@@ -0,0 +1,365 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Micro-benchmark suite for the game engines.
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java Benchmark [NAME...]
+ * </pre>
+ * Runs the named benchmarks, or all of them. Each prints one line per
+ * measurement.
+ */
+public class Benchmark {
+    private static final long WARMUP_MILLIS = 500;
+    private static final long MEASURE_MILLIS = 1000;
+
+    private static final Map<String, Runnable> BENCHMARKS = new LinkedHashMap<>();
+
+    static {
+        BENCHMARKS.put("rollouts", Benchmark::rollouts);
+        BENCHMARKS.put("mcts-scaling", Benchmark::mctsScaling);
+        BENCHMARKS.put("archive-query", Benchmark::archiveQuery);
+        BENCHMARKS.put("import", Benchmark::importGames);
+        BENCHMARKS.put("batch-eval", Benchmark::batchEval);
+        BENCHMARKS.put("win-detection", Benchmark::winDetection);
+        BENCHMARKS.put("matchmaking", Benchmark::matchmaking);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            args = BENCHMARKS.keySet().toArray(new String[0]);
+        }
+        for (String name : args) {
+            Runnable benchmark = BENCHMARKS.get(name);
+            if (benchmark == null) {
+                System.out.println("Unknown benchmark " + name + ", expected one of " + BENCHMARKS.keySet());
+                continue;
+            }
+            System.out.println("== " + name);
+            benchmark.run();
+        }
+    }
+
+    // Random rollouts from the empty board on one core
+    private static void rollouts() {
+        Position start = new Position();
+        Position scratch = new Position();
+        long[] random = {System.nanoTime() | 1};
+
+        long end = System.nanoTime() + WARMUP_MILLIS * 1_000_000;
+        while (System.nanoTime() < end) {
+            scratch.set(start);
+            MctsPlayer.rollout(scratch, random);
+        }
+
+        long count = 0;
+        long begin = System.nanoTime();
+        end = begin + MEASURE_MILLIS * 1_000_000;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 256; i++) {
+                scratch.set(start);
+                MctsPlayer.rollout(scratch, random);
+            }
+            count += 256;
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%.0f rollouts/s per core%n", count / seconds);
+    }
+
+    // MCTS playouts per second with 1, 2, 4... threads up to the core count
+    private static void mctsScaling() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(cores, threads * 2) : cores + 1) {
+            MctsPlayer player = new MctsPlayer(threads, Long.MAX_VALUE);
+            player.chooseMove(new Position(), WARMUP_MILLIS);
+            long begin = System.nanoTime();
+            player.chooseMove(new Position(), MEASURE_MILLIS);
+            double rate = player.getLastPlayouts() / ((System.nanoTime() - begin) / 1e9);
+            player.shutdown();
+            if (threads == 1) {
+                single = rate;
+            }
+            System.out.printf("%2d threads: %.0f playouts/s (%.0f per core, %.2fx)%n",
+                    threads, rate, rate / threads, rate / single);
+        }
+    }
+
+    // Streaming import of a file of random games in move notation
+    private static void importGames() {
+        Path file;
+        try {
+            file = Files.createTempFile("import-benchmark", ".txt");
+            StringBuilder lines = new StringBuilder();
+            Position empty = new Position();
+            Position position = new Position();
+            long[] random = {42};
+            for (int game = 0; game < 1_000_000; game++) {
+                position.set(empty);
+                while (position.getMoves() < BitBoard.ROWS * BitBoard.COLUMNS) {
+                    int legal = position.legalColumns();
+                    random[0] ^= random[0] << 13;
+                    random[0] ^= random[0] >>> 7;
+                    random[0] ^= random[0] << 17;
+                    int pick = (int) ((random[0] >>> 33) % Integer.bitCount(legal));
+                    for (int i = 0; i < pick; i++) {
+                        legal &= legal - 1;
+                    }
+                    int column = Integer.numberOfTrailingZeros(legal);
+                    boolean wins = position.isWinningMove(column);
+                    position.play(column);
+                    lines.append(MoveNotation.digitOf(column));
+                    if (wins) {
+                        break;
+                    }
+                }
+                lines.append('\n');
+            }
+            Files.writeString(file, lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            long[] plies = new long[1];
+            GameImporter.Sink sink = (moves, length, winner) -> plies[0] += length;
+            new GameImporter(sink).importFile(file);
+
+            GameImporter importer = new GameImporter(sink);
+            long begin = System.nanoTime();
+            importer.importFile(file);
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("%.0f games/s (%.1f M games/min)%n",
+                    importer.getImported() / seconds, importer.getImported() / seconds * 60 / 1e6);
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Depth-6 batch evaluation of random 12-ply positions by batch size, on every core
+    private static void batchEval() {
+        String[] all = new String[1 << 16];
+        Position empty = new Position();
+        Position position = new Position();
+        long[] random = {42};
+        StringBuilder moves = new StringBuilder();
+        for (int i = 0; i < all.length; i++) {
+            position.set(empty);
+            moves.setLength(0);
+            while (position.getMoves() < 12) {
+                int legal = BitBoard.columnsOf(position.nonLosingCells());
+                if (legal == 0 || position.winningColumns() != 0) {
+                    position.set(empty);
+                    moves.setLength(0);
+                    continue;
+                }
+                random[0] ^= random[0] << 13;
+                random[0] ^= random[0] >>> 7;
+                random[0] ^= random[0] << 17;
+                int pick = (int) ((random[0] >>> 33) % Integer.bitCount(legal));
+                for (int k = 0; k < pick; k++) {
+                    legal &= legal - 1;
+                }
+                int column = Integer.numberOfTrailingZeros(legal);
+                position.play(column);
+                moves.append(MoveNotation.digitOf(column));
+            }
+            all[i] = moves.toString();
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        BatchEvaluator evaluator = new BatchEvaluator(threads);
+        int[] scores = new int[all.length];
+        int[] bestColumns = new int[all.length];
+        int[] depths = new int[all.length];
+        for (int size : new int[] {1, 64, 4096, all.length}) {
+            String[] batch = Arrays.copyOf(all, size);
+            for (long end = System.nanoTime() + WARMUP_MILLIS * 1_000_000; System.nanoTime() < end; ) {
+                evaluator.evaluate(batch, 6, scores, bestColumns, depths);
+            }
+            long count = 0;
+            long begin = System.nanoTime();
+            long end = begin + MEASURE_MILLIS * 1_000_000;
+            while (count == 0 || System.nanoTime() < end) {
+                evaluator.evaluate(batch, 6, scores, bestColumns, depths);
+                count += size;
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("batch %6d on %d threads: %.0f positions/s%n", size, threads, count / seconds);
+        }
+        evaluator.shutdown();
+    }
+
+    // Players with random ratings and colour preferences enqueued from 1, 2,
+    // 4... threads; each game is released as soon as it is paired
+    private static void matchmaking() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(cores, threads * 2) : cores + 1) {
+            GameHost host = new GameHost();
+            Matchmaker matchmaker = new Matchmaker(host, 200);
+            AtomicLong enqueued = new AtomicLong();
+            long begin = System.nanoTime();
+            long warm = begin + WARMUP_MILLIS * 1_000_000;
+            long end = warm + MEASURE_MILLIS * 1_000_000;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                pool.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    String[] preferences = {null, "RED", "BLACK"};
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        Matchmaker.Match match = matchmaker.enqueue("player", random.nextInt(3000),
+                                preferences[random.nextInt(3)]).getMatch();
+                        if (match != null) {
+                            host.releaseGame(match.getGameId());
+                        }
+                        if (now >= warm) {
+                            enqueued.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            host.shutdown();
+            System.out.printf("%2d threads: %.0f enqueues/s, pairing %s%n",
+                    threads, enqueued.get() / (MEASURE_MILLIS / 1e3), matchmaker.getPairingLatencies());
+        }
+    }
+
+    // Four-in-a-row, full-board and immediate-win checks over 4096 boards from
+    // random games, one board at a time and as BatchWinDetector lanes
+    private static void winDetection() {
+        int count = 4096;
+        long[] stones = new long[count];
+        long[] masks = new long[count];
+        long[] out = new long[count];
+        Position position = new Position();
+        long[] random = {42};
+        for (int i = 0; i < count; i++) {
+            if (position.isTerminal()) {
+                position = new Position();
+            }
+            int legal = position.legalColumns();
+            random[0] ^= random[0] << 13;
+            random[0] ^= random[0] >>> 7;
+            random[0] ^= random[0] << 17;
+            int pick = (int) ((random[0] >>> 33) % Integer.bitCount(legal));
+            for (int k = 0; k < pick; k++) {
+                legal &= legal - 1;
+            }
+            position.play(Integer.numberOfTrailingZeros(legal));
+            masks[i] = position.getMask();
+            stones[i] = position.getCurrent() ^ position.getMask();
+        }
+
+        long[] sink = new long[1];
+        measure("fours, scalar", count, () -> {
+            int won = 0;
+            for (int i = 0; i < count; i++) {
+                won += BitBoard.hasFour(stones[i]) ? 1 : 0;
+            }
+            sink[0] += won;
+        });
+        measure("fours, batch", count, () -> {
+            BatchWinDetector.fours(stones, out, count);
+            sink[0] += BatchWinDetector.countNonZero(out, count);
+        });
+        measure("full boards, scalar", count, () -> {
+            int full = 0;
+            for (int i = 0; i < count; i++) {
+                full += BitBoard.legalColumns(masks[i]) == 0 ? 1 : 0;
+            }
+            sink[0] += full;
+        });
+        measure("full boards, batch", count, () -> {
+            BatchWinDetector.playableCells(masks, out, count);
+            sink[0] += count - BatchWinDetector.countNonZero(out, count);
+        });
+        measure("winning moves, scalar", count, () -> {
+            int threats = 0;
+            for (int i = 0; i < count; i++) {
+                threats += BitBoard.winningColumns(stones[i], masks[i]) != 0 ? 1 : 0;
+            }
+            sink[0] += threats;
+        });
+        measure("winning moves, batch", count, () -> {
+            BatchWinDetector.winningCells(stones, masks, out, count);
+            sink[0] += BatchWinDetector.countNonZero(out, count);
+        });
+        if (sink[0] == 42) {
+            System.out.println();
+        }
+    }
+
+    // Runs a batch operation over and over and prints boards checked per second
+    private static void measure(String name, int boardsPerRun, Runnable run) {
+        long end = System.nanoTime() + WARMUP_MILLIS * 1_000_000;
+        while (System.nanoTime() < end) {
+            run.run();
+        }
+        long runs = 0;
+        long begin = System.nanoTime();
+        end = begin + MEASURE_MILLIS * 1_000_000;
+        while (System.nanoTime() < end) {
+            run.run();
+            runs++;
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%-22s %6.0f M boards/s%n", name, runs * boardsPerRun / seconds / 1e6);
+    }
+
+    // Opening-prefix queries over a freshly generated archive of random games
+    private static void archiveQuery() {
+        Path directory;
+        try {
+            directory = Files.createTempDirectory("archive-benchmark");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try (GameArchive archive = new GameArchive(directory)) {
+            GameArchive.appendRandomGames(archive, 4 * GameArchive.SEGMENT_GAMES, 42);
+
+            long end = System.nanoTime() + WARMUP_MILLIS * 1_000_000;
+            while (System.nanoTime() < end) {
+                archive.queryNextColumns(3);
+            }
+
+            long queries = 0;
+            long begin = System.nanoTime();
+            end = begin + MEASURE_MILLIS * 1_000_000;
+            while (System.nanoTime() < end) {
+                archive.queryNextColumns(3);
+                queries++;
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("%.0f games/s scanned (%d games, %.1f ms per query)%n",
+                    queries * archive.size() / seconds, archive.size(), 1000 * seconds / queries);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            } catch (IOException e) {
+                System.out.println("Failed to delete " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Constant-time bitboard operations for the standard 6x7 Connect 4 board.
+ *
+ * <p>A set of cells is stored in a {@code long}, one bit per cell, column by
+ * column from the left. Each column uses 7 bits: 6 for its cells from the
+ * bottom up, plus one empty sentinel bit on top so shifts never wrap from one
+ * column into the next.</p>
+ *
+ * <pre>
+ *  .  .  .  .  .  .  .     (sentinel row)
+ *  5 12 19 26 33 40 47     row 0 (top)
+ *  4 11 18 25 32 39 46
+ *  3 10 17 24 31 38 45
+ *  2  9 16 23 30 37 44
+ *  1  8 15 22 29 36 43
+ *  0  7 14 21 28 35 42     row 5 (bottom)
+ * </pre>
+ *
+ * <p>A position is described by two bitboards: the stones of one player and
+ * {@code mask}, the stones of both players. Column sets are returned as
+ * {@code int} masks with bit {@code c} set for column {@code c}.</p>
+ */
+public final class BitBoard {
+    /** Number of rows on the board. */
+    public static final int ROWS = 6;
+
+    /** Number of columns on the board. */
+    public static final int COLUMNS = 7;
+
+    /** Bits used per column, including the sentinel. */
+    public static final int HEIGHT = ROWS + 1;
+
+    /** The bottom cell of every column. */
+    public static final long BOTTOM_MASK = repeatPerColumn(1L);
+
+    /** Every playable cell. */
+    public static final long BOARD_MASK = repeatPerColumn((1L << ROWS) - 1);
+
+    /** Column mask with every column set. */
+    public static final int ALL_COLUMNS = (1 << COLUMNS) - 1;
+
+    // Moves bit c*HEIGHT to bit 42+c without carries (see columnsOf)
+    private static final long GATHER = gatherMultiplier();
+
+    private BitBoard() {
+    }
+
+    private static long repeatPerColumn(long columnBits) {
+        long result = 0;
+        for (int col = 0; col < COLUMNS; col++) {
+            result |= columnBits << (col * HEIGHT);
+        }
+        return result;
+    }
+
+    private static long gatherMultiplier() {
+        long result = 0;
+        for (int col = 0; col < COLUMNS; col++) {
+            result |= 1L << (42 - 6 * col);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the bit for a cell, with row 0 at the top as in {@link Board}.
+     */
+    public static long cell(int row, int col) {
+        return 1L << (col * HEIGHT + (ROWS - 1 - row));
+    }
+
+    /**
+     * Returns all cells of a column.
+     */
+    public static long columnMask(int col) {
+        return ((1L << ROWS) - 1) << (col * HEIGHT);
+    }
+
+    /**
+     * Returns the top cell of a column.
+     */
+    public static long topCell(int col) {
+        return 1L << (ROWS - 1 + col * HEIGHT);
+    }
+
+    /**
+     * Returns the cells a checker would land in, one per non-full column.
+     */
+    public static long playableCells(long mask) {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    /**
+     * Returns the cell a checker dropped into {@code col} would land in, or 0
+     * if the column is full.
+     */
+    public static long dropCell(long mask, int col) {
+        return playableCells(mask) & columnMask(col);
+    }
+
+    /**
+     * Collapses a set of cells to the set of columns containing at least one
+     * of them.
+     */
+    public static int columnsOf(long cells) {
+        long any = cells & BOARD_MASK;
+        any |= any >>> 1;
+        any |= any >>> 2;
+        any |= any >>> 2;
+        return (int) (((any & BOTTOM_MASK) * GATHER) >>> 42) & ALL_COLUMNS;
+    }
+
+    /**
+     * Returns the columns that are not full.
+     */
+    public static int legalColumns(long mask) {
+        return columnsOf(playableCells(mask));
+    }
+
+    /**
+     * Returns the empty cells that would complete four in a row for
+     * {@code stones}, whether or not they are playable yet.
+     */
+    public static long winningCells(long stones, long mask) {
+        // Vertical
+        long result = (stones << 1) & (stones << 2) & (stones << 3);
+
+        // Horizontal, then both diagonals
+        result |= lineCompletions(stones, HEIGHT);
+        result |= lineCompletions(stones, HEIGHT - 1);
+        result |= lineCompletions(stones, HEIGHT + 1);
+
+        return result & (BOARD_MASK ^ mask);
+    }
+
+    private static long lineCompletions(long stones, int shift) {
+        long pair = (stones << shift) & (stones << 2 * shift);
+        long result = pair & (stones << 3 * shift);
+        result |= pair & (stones >>> shift);
+        pair = (stones >>> shift) & (stones >>> 2 * shift);
+        result |= pair & (stones << shift);
+        result |= pair & (stones >>> 3 * shift);
+        return result;
+    }
+
+    /**
+     * Returns the columns in which {@code stones} can win immediately.
+     */
+    public static int winningColumns(long stones, long mask) {
+        return columnsOf(winningCells(stones, mask) & playableCells(mask));
+    }
+
+    /**
+     * Mirrors a bitboard, or a {@link Position#key()}, across the center column.
+     */
+    public static long mirror(long bits) {
+        long group = (1L << HEIGHT) - 1;
+        return ((bits & group) << 6 * HEIGHT)
+                | ((bits & group << HEIGHT) << 4 * HEIGHT)
+                | ((bits & group << 2 * HEIGHT) << 2 * HEIGHT)
+                | (bits & group << 3 * HEIGHT)
+                | ((bits & group << 4 * HEIGHT) >>> 2 * HEIGHT)
+                | ((bits & group << 5 * HEIGHT) >>> 4 * HEIGHT)
+                | ((bits & group << 6 * HEIGHT) >>> 6 * HEIGHT);
+    }
+
+    /**
+     * Returns the column that {@code col} becomes when the board is mirrored.
+     */
+    public static int mirrorColumn(int col) {
+        return COLUMNS - 1 - col;
+    }
+
+    /**
+     * Mirrors a column mask across the center column.
+     */
+    public static int mirrorColumns(int columns) {
+        return Integer.reverse(columns) >>> (Integer.SIZE - COLUMNS);
+    }
+
+    /**
+     * Returns true if {@code stones} contains four in a row.
+     */
+    public static boolean hasFour(long stones) {
+        return hasFour(stones, 1) || hasFour(stones, HEIGHT)
+                || hasFour(stones, HEIGHT - 1) || hasFour(stones, HEIGHT + 1);
+    }
+
+    private static boolean hasFour(long stones, int shift) {
+        long pairs = stones & (stones >>> shift);
+        return (pairs & (pairs >>> 2 * shift)) != 0;
+    }
+}
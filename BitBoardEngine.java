@@ -0,0 +1,159 @@
+/**
+ * {@link BoardEngine} for boards that fit in a {@code long}: up to 63
+ * playable cells plus a sentinel bit per column, in {@link BitBoard}'s
+ * column-major layout with the column height taken from the board size.
+ *
+ * <p>Lines are found with shifts, as in {@link BitBoard#winningCells}: a
+ * run of {@code k} stones in a direction is the AND of the stones shifted
+ * by {@code 0..k-1} steps, built by doubling so it takes {@code log k}
+ * shifts. On the standard board, column sets come straight from
+ * {@link BitBoard}.</p>
+ */
+final class BitBoardEngine implements BoardEngine {
+    private final BoardSize size;
+    private final boolean standard;
+    private final int rows;
+    private final int columns;
+    private final int height;
+    private final int connect;
+    private final long bottomMask;
+    private final long boardMask;
+    private final long[] stones = new long[2];
+    private long mask;
+
+    BitBoardEngine(BoardSize size) {
+        if (!size.fitsBitBoard()) {
+            throw new IllegalArgumentException("A " + size + " board does not fit in a bitboard");
+        }
+        this.size = size;
+        this.standard = size.isStandard();
+        this.rows = size.getRows();
+        this.columns = size.getColumns();
+        this.height = rows + 1;
+        this.connect = size.getConnect();
+        long bottom = 0;
+        for (int col = 0; col < columns; col++) {
+            bottom |= 1L << (col * height);
+        }
+        this.bottomMask = bottom;
+        // Every playable cell: rows bits above each bottom cell
+        this.boardMask = bottom * ((1L << rows) - 1);
+    }
+
+    @Override
+    public BoardSize getSize() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        stones[0] = 0;
+        stones[1] = 0;
+        mask = 0;
+    }
+
+    @Override
+    public int drop(int column, int player) {
+        long cell = dropCell(column);
+        if (cell == 0) {
+            return -1;
+        }
+        stones[player] |= cell;
+        mask |= cell;
+        return rows - 1 - (Long.numberOfTrailingZeros(cell) - column * height);
+    }
+
+    @Override
+    public void set(int row, int column, int player) {
+        long cell = cell(row, column);
+        stones[player] |= cell;
+        mask |= cell;
+    }
+
+    @Override
+    public int get(int row, int column) {
+        long cell = cell(row, column);
+        return (stones[0] & cell) != 0 ? 0 : (stones[1] & cell) != 0 ? 1 : -1;
+    }
+
+    @Override
+    public boolean completesLine(int row, int column) {
+        int player = get(row, column);
+        return player >= 0 && hasLine(stones[player]);
+    }
+
+    @Override
+    public boolean isFull() {
+        return mask == boardMask;
+    }
+
+    @Override
+    public int legalColumns() {
+        if (standard) {
+            return BitBoard.legalColumns(mask);
+        }
+        int result = 0;
+        for (int col = 0; col < columns; col++) {
+            if (dropCell(col) != 0) {
+                result |= 1 << col;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int winningColumns(int player) {
+        if (standard) {
+            return BitBoard.winningColumns(stones[player], mask);
+        }
+        int result = 0;
+        for (int col = 0; col < columns; col++) {
+            long cell = dropCell(col);
+            if (cell != 0 && hasLine(stones[player] | cell)) {
+                result |= 1 << col;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a player's stones; in {@link BitBoard}'s layout on the standard board.
+     */
+    long getStones(int player) {
+        return stones[player];
+    }
+
+    private long cell(int row, int column) {
+        return 1L << (column * height + rows - 1 - row);
+    }
+
+    private long dropCell(int column) {
+        long columnMask = ((1L << rows) - 1) << (column * height);
+        return (mask + bottomMask) & columnMask;
+    }
+
+    private boolean hasLine(long bits) {
+        // A step off the board in any direction lands on a sentinel bit, so runs never wrap
+        return run(bits, 1) != 0 || run(bits, height) != 0
+                || run(bits, height - 1) != 0 || run(bits, height + 1) != 0;
+    }
+
+    // The cells starting a run of connect stones, step cells apart
+    private long run(long bits, int step) {
+        long result = bits;
+        int length = 1;
+        while (length * 2 <= connect) {
+            result &= shift(result, length * step);
+            length *= 2;
+        }
+        if (length < connect) {
+            result &= shift(result, (connect - length) * step);
+        }
+        return result;
+    }
+
+    // Java masks shift counts to 6 bits, so longer shifts must be cut off here
+    private static long shift(long bits, int distance) {
+        return distance < Long.SIZE ? bits >>> distance : 0;
+    }
+}
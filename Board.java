@@ -3,25 +3,45 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Board {
-    private final int ROWS = 6;
-    private final int COLS = 7;
+    private final int rows;
+    private final int cols;
     private final List<Space> spaces;
 
     public Board() {
-        this.spaces = new ArrayList<>();
+        this(BoardSize.STANDARD.getRows(), BoardSize.STANDARD.getColumns());
+    }
+
+    public Board(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.spaces = new ArrayList<>(rows * cols);
 
-        for (int row = 0; row < ROWS; row++) {
-            for (int col = 0; col < COLS; col++) {
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
                 spaces.add(new Space(this, row, col));
             }
         }
     }
 
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+
+    public void clear() {
+        for (Space space : spaces) {
+            space.setOccupiedBy(null);
+        }
+    }
+
     public Space getSpace(int row, int col) {
-        if (row < 0 || row >= ROWS || col < 0 || col >= COLS) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
             throw new IndexOutOfBoundsException("Row or column out of bounds");
         }
-        int index = row * COLS + col;
+        int index = row * cols + col;
         return spaces.get(index);
     }
 }
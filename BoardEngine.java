@@ -0,0 +1,63 @@
+/**
+ * Stone storage and line detection for one board, behind {@link Game}.
+ *
+ * <p>Players are numbered 0 and 1, by {@link Checker#ordinal()}. Rows count
+ * from 0 at the top, as in {@link Board}; column sets are {@code int} masks
+ * with bit {@code c} set for column {@code c}.</p>
+ *
+ * <p>{@link #create(BoardSize)} picks {@link BitBoardEngine} when the board
+ * fits in a {@code long} and {@link ArrayBoardEngine} otherwise.</p>
+ */
+interface BoardEngine {
+    /**
+     * Returns the fastest engine for a board size.
+     */
+    static BoardEngine create(BoardSize size) {
+        return size.fitsBitBoard() ? new BitBoardEngine(size) : new ArrayBoardEngine(size);
+    }
+
+    BoardSize getSize();
+
+    /**
+     * Empties the board.
+     */
+    void clear();
+
+    /**
+     * Drops a stone into a column.
+     *
+     * @return the row it landed in, or -1 if the column is full
+     */
+    int drop(int column, int player);
+
+    /**
+     * Puts a stone on a cell without checking it is playable, for restoring
+     * saved games.
+     */
+    void set(int row, int column, int player);
+
+    /**
+     * Returns the player on a cell, or -1 if it is empty.
+     */
+    int get(int row, int column);
+
+    /**
+     * Returns true if the player whose stone is on a cell has a line of
+     * {@link BoardSize#getConnect()} stones. Called for the stone just
+     * dropped, the only one that can have made a new line, so engines may
+     * check just the lines through it.
+     */
+    boolean completesLine(int row, int column);
+
+    boolean isFull();
+
+    /**
+     * Returns the columns that are not full.
+     */
+    int legalColumns();
+
+    /**
+     * Returns the columns in which the player would complete a line by playing now.
+     */
+    int winningColumns(int player);
+}
@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Draws boards to a terminal, one frame per call, for the text clients and
+ * bot-vs-bot demos.
+ *
+ * <p>Each frame is built in one reusable buffer and written with a single
+ * write and flush, instead of a print per cell. In {@link Mode#ANSI} mode
+ * the board stays in place at the top of the screen and only the cells and
+ * status line that changed since the last frame are redrawn, with cursor
+ * movement escapes; anything printed after a frame, such as a prompt,
+ * appears below the board and is cleared by the next frame.
+ * {@link Mode#HEADLESS} skips rendering entirely, for soak tests.</p>
+ *
+ * <pre>
+ *      0   1   2   3   4   5   6
+ *   +-----------------------------+
+ *  0 | .   .   .   .   .   .   .  |
+ *   +-----------------------------+
+ *  ...
+ * Next: RED
+ * </pre>
+ */
+public final class BoardRenderer {
+    /**
+     * How frames are drawn.
+     */
+    public enum Mode {
+        /** Every frame in full, below the last, for logs and dumb terminals. */
+        PLAIN,
+        /** The board redrawn in place, changed cells only. */
+        ANSI,
+        /** Nothing drawn. */
+        HEADLESS
+    }
+
+    private static final byte ESCAPE = 0x1B;
+
+    private final OutputStream out;
+    private final Mode mode;
+    private byte[] buffer = new byte[4096];
+    private int length;
+
+    // The frame on screen in ANSI mode; null until the first full frame
+    private char[] shown;
+    private int shownRows;
+    private int shownColumns;
+    private String shownStatus;
+
+    private long frames;
+    private long bytesWritten;
+
+    public BoardRenderer(OutputStream out, Mode mode) {
+        this.out = out;
+        this.mode = mode;
+    }
+
+    /**
+     * Returns the mode named by the {@code connect4.render} system property
+     * ({@code plain}, {@code ansi} or {@code headless}), or else ANSI when
+     * running in a terminal that understands it and PLAIN otherwise.
+     */
+    public static Mode defaultMode() {
+        String name = System.getProperty("connect4.render");
+        if (name != null) {
+            return Mode.valueOf(name.toUpperCase());
+        }
+        String term = System.getenv("TERM");
+        return System.console() != null && term != null && !term.equals("dumb") ? Mode.ANSI : Mode.PLAIN;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Draws a board.
+     *
+     * @param cells one symbol per cell, row by row from the top
+     * @param status a line shown under the board, or null
+     * @throws UncheckedIOException if the output cannot be written
+     */
+    public void render(char[] cells, int rows, int columns, String status) {
+        frames++;
+        if (mode == Mode.HEADLESS) {
+            return;
+        }
+        length = 0;
+        if (mode == Mode.PLAIN) {
+            appendFrame(cells, rows, columns, status);
+        } else if (shown == null || rows != shownRows || columns != shownColumns) {
+            // Home, clear the screen, draw it all, then clear anything left below
+            appendEscape("H");
+            appendEscape("2J");
+            appendFrame(cells, rows, columns, status);
+            appendEscape("J");
+            remember(cells, rows, columns, status);
+        } else {
+            appendChanges(cells, rows, columns, status);
+        }
+        try {
+            out.write(buffer, 0, length);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bytesWritten += length;
+    }
+
+    /**
+     * Forgets what is on screen, so the next ANSI frame is drawn in full,
+     * such as after the screen was cleared or scrolled by other output.
+     */
+    public void reset() {
+        shown = null;
+    }
+
+    /**
+     * Returns the number of frames rendered, including skipped headless ones.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void appendFrame(char[] cells, int rows, int columns, String status) {
+        append("    ");
+        for (int col = 0; col < columns; col++) {
+            append(' ');
+            append((char) ('0' + col));
+            append("  ");
+        }
+        append('\n');
+        appendBorder(columns);
+        for (int row = 0; row < rows; row++) {
+            if (row < 10) {
+                append(' ');
+            }
+            appendNumber(row);
+            append(" |");
+            for (int col = 0; col < columns; col++) {
+                append(' ');
+                append(cells[row * columns + col]);
+                append("  ");
+            }
+            append("|\n");
+            appendBorder(columns);
+        }
+        if (status != null) {
+            append(status);
+        }
+        append('\n');
+    }
+
+    private void appendBorder(int columns) {
+        append("  +");
+        for (int i = 0; i < 4 * columns + 1; i++) {
+            append('-');
+        }
+        append("+\n");
+    }
+
+    // Moves to and redraws each changed cell and the status line, then parks
+    // the cursor under the board
+    private void appendChanges(char[] cells, int rows, int columns, String status) {
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                int index = row * columns + col;
+                if (cells[index] != shown[index]) {
+                    appendMove(3 + 2 * row, 6 + 4 * col);
+                    append(cells[index]);
+                    shown[index] = cells[index];
+                }
+            }
+        }
+        int statusLine = 3 + 2 * rows;
+        if (status == null ? shownStatus != null : !status.equals(shownStatus)) {
+            appendMove(statusLine, 1);
+            if (status != null) {
+                append(status);
+            }
+            appendEscape("K");
+            shownStatus = status;
+        }
+        appendMove(statusLine + 1, 1);
+        appendEscape("J");
+    }
+
+    private void remember(char[] cells, int rows, int columns, String status) {
+        if (shown == null || shown.length != cells.length) {
+            shown = new char[rows * columns];
+        }
+        System.arraycopy(cells, 0, shown, 0, rows * columns);
+        shownRows = rows;
+        shownColumns = columns;
+        shownStatus = status;
+    }
+
+    // Cursor to a 1-based line and column
+    private void appendMove(int line, int column) {
+        ensure(16);
+        buffer[length++] = ESCAPE;
+        buffer[length++] = '[';
+        appendNumber(line);
+        buffer[length++] = ';';
+        appendNumber(column);
+        buffer[length++] = 'H';
+    }
+
+    private void appendEscape(String code) {
+        append((char) ESCAPE);
+        append('[');
+        append(code);
+    }
+
+    private void appendNumber(int value) {
+        if (value >= 10) {
+            appendNumber(value / 10);
+        }
+        append((char) ('0' + value % 10));
+    }
+
+    private void append(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    // Encodes as UTF-8; symbols and status lines are almost always ASCII
+    private void append(char c) {
+        ensure(3);
+        if (c < 0x80) {
+            buffer[length++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[length++] = (byte) (0xC0 | c >> 6);
+            buffer[length++] = (byte) (0x80 | c & 0x3F);
+        } else {
+            buffer[length++] = (byte) (0xE0 | c >> 12);
+            buffer[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+            buffer[length++] = (byte) (0x80 | c & 0x3F);
+        }
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Dimensions and win length of a board, for Connect 4 and its variants such
+ * as 8x7 or Connect 5.
+ *
+ * <p>Sizes are written columns first, as in "7x6" for the standard board.
+ * Columns are limited to 9 so moves can still be written in
+ * {@link MoveNotation}.</p>
+ */
+public final class BoardSize {
+    /** The standard 7x6 board, four in a row to win. */
+    public static final BoardSize STANDARD = new BoardSize(6, 7, 4);
+
+    /** Most columns a board may have. */
+    public static final int MAX_COLUMNS = 9;
+
+    /** Most rows a board may have. */
+    public static final int MAX_ROWS = 64;
+
+    private final int rows;
+    private final int columns;
+    private final int connect;
+
+    /**
+     * @param connect stones in a row needed to win
+     * @throws IllegalArgumentException if the board has no cells, is larger
+     *         than {@link #MAX_ROWS} by {@link #MAX_COLUMNS}, or the win
+     *         length is under 2 or does not fit on it
+     */
+    public BoardSize(int rows, int columns, int connect) {
+        if (rows < 1 || rows > MAX_ROWS || columns < 1 || columns > MAX_COLUMNS) {
+            throw new IllegalArgumentException("Boards must have 1 to " + MAX_ROWS + " rows and 1 to "
+                    + MAX_COLUMNS + " columns");
+        }
+        if (connect < 2 || connect > Math.max(rows, columns)) {
+            throw new IllegalArgumentException("Cannot connect " + connect + " on a " + columns + "x" + rows + " board");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.connect = connect;
+    }
+
+    /**
+     * Parses a size written as {@code COLUMNSxROWS}, optionally followed by
+     * {@code :CONNECT}, such as "8x7" or "9x7:5". The win length defaults to 4.
+     *
+     * @throws IllegalArgumentException if the text is not a valid size
+     */
+    public static BoardSize parse(String text) {
+        String[] parts = text.trim().toLowerCase().split("[x:]");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Expected COLUMNSxROWS[:CONNECT], got " + text);
+        }
+        try {
+            int columns = Integer.parseInt(parts[0]);
+            int rows = Integer.parseInt(parts[1]);
+            int connect = parts.length > 2 ? Integer.parseInt(parts[2]) : 4;
+            return new BoardSize(rows, columns, connect);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected COLUMNSxROWS[:CONNECT], got " + text);
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the number of stones in a row needed to win.
+     */
+    public int getConnect() {
+        return connect;
+    }
+
+    public int getCells() {
+        return rows * columns;
+    }
+
+    /**
+     * Returns true if a set of cells fits in a {@code long} in
+     * {@link BitBoard}'s layout, with a sentinel bit on top of each column.
+     */
+    public boolean fitsBitBoard() {
+        return (rows + 1) * columns <= Long.SIZE;
+    }
+
+    public boolean isStandard() {
+        return equals(STANDARD);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof BoardSize)) {
+            return false;
+        }
+        BoardSize size = (BoardSize) other;
+        return rows == size.rows && columns == size.columns && connect == size.connect;
+    }
+
+    @Override
+    public int hashCode() {
+        return (rows * 31 + columns) * 31 + connect;
+    }
+
+    @Override
+    public String toString() {
+        return columns + "x" + rows + (connect != 4 ? ":" + connect : "");
+    }
+}
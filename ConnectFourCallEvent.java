@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one {@link ConnectFourJSON} call, committed by
+ * {@link Diagnostics} while a recording is running.
+ */
+@Name("connect4.ConnectFourCall")
+@Label("Connect Four Call")
+@Category("Connect Four")
+@Description("One call to a ConnectFourJSON method")
+@StackTrace(false)
+final class ConnectFourCallEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by the calling thread, or -1 if not counted, as on virtual threads")
+    @DataAmount(DataAmount.BYTES)
+    long allocatedBytes;
+
+    @Label("Slow")
+    @Description("Whether the call took longer than connect4.slowMillis")
+    boolean slow;
+
+    // Not recorded; where the call started, for Diagnostics
+    transient long startNanos;
+    transient long startBytes;
+}
@@ -0,0 +1,63 @@
+/**
+ * Minimal, allocation-free view of a Connect 4 rules engine used to compare
+ * implementations against each other.
+ *
+ * <p>Players are identified by move order rather than by checker color so that
+ * engines with different color conventions can be compared directly:</p>
+ * <ul>
+ *  <li>{@link #EMPTY} = empty cell</li>
+ *  <li>{@link #FIRST} = the player who moved first</li>
+ *  <li>{@link #SECOND} = the player who moved second</li>
+ * </ul>
+ *
+ * <p>Rows are numbered from the top (row 0) to the bottom (row 5 on a standard
+ * board), matching the {@code cells} layout of
+ * {@link ConnectFourJSON#getGameState()}.</p>
+ *
+ * <p>Implementations must provide a public no-argument constructor so they can be
+ * loaded by name, e.g. by {@link DifferentialHarness}.</p>
+ */
+public interface ConnectFourEngine {
+
+    /** Empty cell, or no winner yet. */
+    int EMPTY = 0;
+
+    /** The player who moved first. */
+    int FIRST = 1;
+
+    /** The player who moved second. */
+    int SECOND = 2;
+
+    /** Winner value for a full board with no four-in-a-row. */
+    int DRAW = 3;
+
+    /**
+     * Resets the engine to an empty board with {@link #FIRST} to move.
+     */
+    void reset();
+
+    /**
+     * Drops a checker for the side to move into the given column.
+     *
+     * @param column the column to play; may be out of range or full
+     * @return true if the engine accepted the move, false otherwise
+     */
+    boolean play(int column);
+
+    /**
+     * Returns the result of the game so far.
+     *
+     * @return {@link #EMPTY} while the game is in progress, {@link #FIRST} or
+     *         {@link #SECOND} for a win, or {@link #DRAW}
+     */
+    int winner();
+
+    /**
+     * Returns the occupant of a cell.
+     *
+     * @param row the row, 0 at the top
+     * @param column the column, 0 at the left
+     * @return {@link #EMPTY}, {@link #FIRST} or {@link #SECOND}
+     */
+    int cell(int row, int column);
+}
@@ -1,8 +1,29 @@
+import java.nio.ByteBuffer;
 
 public class ConnectFourImpl implements ConnectFourJSON {
     private Game game;
     private String player1Name;
     private String player2Name;
+    private TimeControl timeControl;
+    private long eventId = EventLog.NO_GAME;
+    private final BoardSize size;
+
+    /**
+     * Creates an implementation playing on the standard 7x6 board.
+     */
+    public ConnectFourImpl() {
+        this(BoardSize.STANDARD);
+    }
+
+    /**
+     * Creates an implementation playing a variant, such as 8x7 or Connect 5.
+     * Game states of other sizes also give their {@code rows},
+     * {@code columns} and {@code connect}, and list the cells row by row
+     * from the top as usual.
+     */
+    public ConnectFourImpl(BoardSize size) {
+        this.size = size;
+    }
 
     /**
      * Initialize a new Connect 4 game with specified player names.
@@ -45,16 +66,7 @@ public class ConnectFourImpl implements ConnectFourJSON {
      */
     @Override
     public String startGame(String player1, String player2, String player1CheckerPreference) {
-        try{
-            Checker preference = (player1CheckerPreference != null)
-                    ? Checker.valueOf(player1CheckerPreference.toUpperCase())
-                    : Checker.RED;
-
-            return startGame(player1, player2, preference);
-        }catch(IllegalArgumentException e){
-            System.out.println("Invalid checker color preference. Choosing default...");
-            return startGame(player1, player2, Checker.RED);
-        }
+        return startGame(player1, player2, player1CheckerPreference, null);
     }
 
     /**
@@ -98,6 +110,23 @@ public class ConnectFourImpl implements ConnectFourJSON {
         return startGame(player1, player2, Checker.RED);
     }
 
+    @Override
+    public String startGame(String player1, String player2, String player1CheckerPreference, TimeControl timeControl) {
+        Checker preference;
+        try{
+            preference = (player1CheckerPreference != null)
+                    ? Checker.valueOf(player1CheckerPreference.toUpperCase())
+                    : Checker.RED;
+        }catch(IllegalArgumentException e){
+            EventLog.shared().warn("invalid-checker-preference", eventId,
+                    player1CheckerPreference + ", choosing RED");
+            preference = Checker.RED;
+        }
+        newGame(player1, player2, preference, timeControl);
+        logStart();
+        return game.getGameStateJson();
+    }
+
     @Override
     public String resetGame() {
         if (player1Name == null || player2Name == null) {
@@ -105,11 +134,12 @@ public class ConnectFourImpl implements ConnectFourJSON {
         }
 
         try {
-            startGame(player1Name, player2Name);
+            newGame(player1Name, player2Name, Checker.RED, timeControl);
         } catch (IllegalArgumentException e) {
-            System.out.println("Failed to reset game: " + e.getMessage());
+            EventLog.shared().error("reset-failed", eventId, e.getMessage());
             return "{\"error\":\"Internal error while resetting game\"}";
         }
+        EventLog.shared().info("game-reset", eventId, null);
 
         return game.getGameStateJson();
     }
@@ -123,10 +153,11 @@ public class ConnectFourImpl implements ConnectFourJSON {
         try{
             game.endGame();
         }catch (Exception e){
-            System.out.println("Failed to end game successfully: " + e.getMessage());
+            EventLog.shared().error("end-failed", eventId, e.getMessage());
             return "{\"error\":\"Internal error while ending game\"}";
         }
-        
+        EventLog.shared().info("game-end", eventId, game.getWinner());
+
         return game.getGameStateJson();
     }
 
@@ -135,6 +166,9 @@ public class ConnectFourImpl implements ConnectFourJSON {
         if (game == null) {
             return "{\"error\": \"Game not started\"}";
         }
+        if (game.checkTimeout()) {
+            return game.getGameStateJson();
+        }
         boolean success = game.takeTurn(column);
         if (!success) {
             return "{\"error\": \"Invalid move\"}";
@@ -147,10 +181,136 @@ public class ConnectFourImpl implements ConnectFourJSON {
         if (game == null) {
             return "{\"error\": \"Game not started\"}";
         }
+        game.checkTimeout();
+        return game.getGameStateJson();
+    }
+
+    @Override
+    public int getLegalMoves() {
+        return game == null ? 0 : game.getLegalMoveMask();
+    }
+
+    @Override
+    public int getWinningMoves() {
+        return game == null ? 0 : game.getWinningMoveMask();
+    }
+
+    @Override
+    public int getBlockingMoves() {
+        return game == null ? 0 : game.getBlockingMoveMask();
+    }
+
+    /**
+     * Flags a loss on time if the player to move has run out.
+     *
+     * @return true if the game was lost on time by this call
+     * @see Game#checkTimeout()
+     */
+    boolean checkTimeout() {
+        return game != null && game.checkTimeout();
+    }
+
+    @Override
+    public String getMoveString() {
+        return game == null ? "" : game.getMoveString();
+    }
+
+    @Override
+    public String playMoves(String moves) {
+        if (game == null) {
+            return "{\"error\": \"Game not started\"}";
+        }
+        if (!game.playMoves(moves)) {
+            return "{\"error\": \"Invalid move\"}";
+        }
         return game.getGameStateJson();
     }
 
+    /**
+     * Returns the current game, or null if none has been started.
+     */
+    Game getGame() {
+        return game;
+    }
+
+    /**
+     * @see Game#getVersion()
+     */
+    long getVersion() {
+        return game == null ? 0 : game.getVersion();
+    }
+
+    /**
+     * @see Game#isLostOnTime()
+     */
+    boolean isLostOnTime() {
+        return game != null && game.isLostOnTime();
+    }
+
+    /**
+     * @see Game#getMillisUntilTimeout()
+     */
+    long getMillisUntilTimeout() {
+        return game == null ? Long.MAX_VALUE : game.getMillisUntilTimeout();
+    }
+
+    /**
+     * Writes the current game in {@link Game}'s compact form.
+     *
+     * @throws IllegalStateException if no game has been started
+     */
+    void writeState(ByteBuffer buffer) {
+        if (game == null) {
+            throw new IllegalStateException("Game not started");
+        }
+        game.writeTo(buffer);
+    }
+
+    /**
+     * Replaces the current game with one written by {@link #writeState(ByteBuffer)}.
+     */
+    void readState(ByteBuffer buffer) {
+        if (game == null) {
+            this.game = new Game("", "", Checker.RED, size);
+        }
+        game.readFrom(buffer);
+        this.player1Name = game.getPlayer1Name();
+        this.player2Name = game.getPlayer2Name();
+        this.timeControl = game.getTimeControl();
+    }
+
     private String startGame(String player1, String player2, Checker player1CheckerPreference) {
+        newGame(player1, player2, player1CheckerPreference, null);
+        logStart();
+        return game.getGameStateJson();
+    }
+
+    /**
+     * Sets the id this game's events are logged under, such as its
+     * {@link GameHost} id. Events are logged without an id until then.
+     */
+    void setEventId(long id) {
+        this.eventId = id;
+    }
+
+    /**
+     * Logs the start of the current game to the {@link EventLog}.
+     */
+    void logStart() {
+        EventLog log = EventLog.shared();
+        if (log.isLoggable(EventLog.Level.INFO)) {
+            log.info("game-start", eventId, player1Name + " vs " + player2Name);
+        }
+    }
+
+    /**
+     * Starts a new game without building its JSON state. An existing game is
+     * reset in place rather than replaced.
+     *
+     * @param timeControl clocks for both players, or null for an untimed game
+     * @throws IllegalArgumentException if player1 or player2 is null or >20 chars
+     */
+    void newGame(String player1, String player2, Checker player1CheckerPreference, TimeControl timeControl) {
         if (player1 == null || player2 == null) {
             throw new IllegalArgumentException("Player names cannot be null");
         }
@@ -161,13 +321,16 @@ public class ConnectFourImpl implements ConnectFourJSON {
         this.player1Name = player1;
         this.player2Name = player2;
 
-
         Checker preference = (player1CheckerPreference != null)
                 ? player1CheckerPreference
                 : Checker.RED;
 
-        this.game = new Game(player1, player2, preference);
-
-        return game.getGameStateJson();
+        if (game == null) {
+            this.game = new Game(player1, player2, preference, size);
+        } else {
+            game.reset(player1, player2, preference);
+        }
+        this.timeControl = timeControl;
+        game.setTimeControl(timeControl);
     }
 }
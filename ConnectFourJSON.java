@@ -23,6 +23,8 @@
  *      "currentPlayerChecker": "RED"|"BLACK",  // Next player to move
  *      "player1Color": "RED"|"BLACK",  // Player 1's checker color
  *      "player2Color": "RED"|"BLACK",  // Player 2's checker color
+ *      "player1TimeMillis": Number|null,  // Player 1's remaining time, null if untimed
+ *      "player2TimeMillis": Number|null,  // Player 2's remaining time, null if untimed
  *      "winner": "RED"|"BLACK"|"Draw"|null     // null = Active game, CHECKER = Winner, "Draw" = Draw
  *  }
  * </pre>
@@ -152,6 +154,25 @@ public interface ConnectFourJSON {
      */
     String startGame(String player1, String player2);
 
+    /**
+     * Starts a new game in which each player is on the clock.
+     *
+     * <p>
+     * Each player starts with the base time of {@code timeControl}, their
+     * clock runs while it is their turn, and the increment is added after each
+     * of their moves. A player who runs out of time loses: the game ends with
+     * the opponent as {@code winner}. Remaining times are reported in the game
+     * state JSON, and {@link #resetGame()} restarts the clocks.
+     * </p>
+     *
+     * @param timeControl base time and increment, or null for an untimed game
+     * @return JSON of initial empty game state
+     * @throws IllegalArgumentException if player1 or player2 is null or >20 chars
+     *
+     * @see #startGame(String, String, String) for the other parameters
+     */
+    String startGame(String player1, String player2, String player1CheckerPreference, TimeControl timeControl);
+
     /**
      * Resets the currently active game to a fresh initial state and returns the new
      * empty game state as JSON.
@@ -294,6 +315,8 @@ public interface ConnectFourJSON {
         "currentPlayerChecker": "BLACK",
         "player1Color": "RED",
         "player2Color": "BLACK",
+        "player1TimeMillis": null,
+        "player2TimeMillis": null,
         "winner": null
     }
     </pre>
@@ -322,9 +345,15 @@ public interface ConnectFourJSON {
      * </p>
      * 
      * <p>
+     * - "player1TimeMillis" and "player2TimeMillis" show each player's
+     * remaining time in a timed game, or null if the game is untimed
+     * </p>
+     * 
+     * <p>
      * - "winner" indicates the winning player 
      * with Checker, null if the game is still active, 
-     * or "Draw" if the game ended in a draw.
+     * or "Draw" if the game ended in a draw. A player who runs out of time
+     * loses, making their opponent the winner.
      * </p>
      * 
      * @apiNote This is specifically useful for UIs to query the current game state
@@ -333,4 +362,99 @@ public interface ConnectFourJSON {
      * @return the current game state in JSON format
      */
     String getGameState();
+
+    /**
+     * Returns the columns that can currently be played.
+     *
+     * <p>
+     * <strong style="font-family: Arial; font-size: 0.856em">Preconditions:</strong> None
+     * </p>
+     *
+     * <p>The result is a bitmask with bit {@code c} set if column {@code c} is not full,
+     * so clients do not need to parse the {@code cells} array to find legal moves.
+     * It is computed in constant time and is cheap to call repeatedly.</p>
+     *
+     * <pre>
+     * <code>
+     * int legal = game.getLegalMoves();
+     * boolean canPlayCenter = (legal &amp; (1 &lt;&lt; 3)) != 0;
+     * </code>
+     * </pre>
+     *
+     * @return the bitmask of legal columns, or 0 if no game is active or the game is over
+     */
+    int getLegalMoves();
+
+    /**
+     * Returns the columns in which the current player would win immediately.
+     *
+     * <p>
+     * <strong style="font-family: Arial; font-size: 0.856em">Preconditions:</strong> None
+     * </p>
+     *
+     * @apiNote Useful for hint features and for ordering moves in computer players.
+     * @return a bitmask with bit {@code c} set if playing column {@code c} wins,
+     *         or 0 if no game is active or the game is over
+     * @see #getLegalMoves() for the bitmask format
+     */
+    int getWinningMoves();
+
+    /**
+     * Returns the columns the current player must play to stop the opponent
+     * from winning on their next move.
+     *
+     * <p>
+     * <strong style="font-family: Arial; font-size: 0.856em">Preconditions:</strong> None
+     * </p>
+     *
+     * <p>If more than one bit is set, the opponent has several threats and at most
+     * one of them can be blocked.</p>
+     *
+     * @return a bitmask with bit {@code c} set if the opponent would win by playing
+     *         column {@code c}, or 0 if no game is active or the game is over
+     * @see #getLegalMoves() for the bitmask format
+     */
+    int getBlockingMoves();
+
+    /**
+     * Returns the moves played so far in the common move notation: one digit
+     * per move naming the column played, numbered from 1 at the left.
+     *
+     * <p>
+     * <strong style="font-family: Arial; font-size: 0.856em">Preconditions:</strong> None
+     * </p>
+     *
+     * <pre>
+     * <code>
+     * game.startGame("Alice", "Bob");
+     * game.takeTurn(3);
+     * game.takeTurn(3);
+     * game.takeTurn(0);
+     * String moves = game.getMoveString(); // "441"
+     * </code>
+     * </pre>
+     *
+     * @return the move string, or "" if no game is active
+     * @see #playMoves(String) to replay a move string
+     */
+    String getMoveString();
+
+    /**
+     * Plays a sequence of moves written in the move notation of
+     * {@link #getMoveString()}, as if by calling {@link #takeTurn(int)} for each.
+     *
+     * <p>
+     * <strong style="font-family: Arial; font-size: 0.856em">Preconditions:</strong> A game
+     * must be active.
+     * </p>
+     *
+     * <p>Moves are played in order up to the first that is not a column digit
+     * or cannot be played; the moves before it stay played.</p>
+     *
+     * @param moves the move string, for example "4453337"
+     * @return the resulting game state, or {"error": "Invalid move"} if a move
+     *         could not be played
+     * @see ConnectFourJSON#getGameState() for the expected return JSON format
+     */
+    String playMoves(String moves);
 }
@@ -0,0 +1,213 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Diagnostics mode for the game API, for catching slow or allocation-heavy
+ * calls.
+ *
+ * <p>With the {@code connect4.diagnostics} system property set to
+ * {@code true}, {@link #wrap(ConnectFourJSON)} returns an API that measures
+ * every call: the time taken and the bytes the calling thread allocated,
+ * from the JVM's per-thread allocation counter. Calls slower than
+ * {@code connect4.slowMillis} (1 ms unless given) are logged as
+ * {@code slow-operation} warnings to the {@link EventLog}, and every call is
+ * committed as a {@code connect4.ConnectFourCall} event while a Flight
+ * Recorder recording is running. A summary per operation is printed when the
+ * JVM exits.</p>
+ *
+ * <p>Allocation is only counted on platform threads: the JVM does not count
+ * it for virtual threads, nor at all on some JVMs. Such calls are timed but
+ * left out of the allocation figures, which show as {@code n/a} if no call
+ * was measured, and their events record -1 bytes.</p>
+ *
+ * <p>Without the property the API is returned unwrapped, so diagnostics cost
+ * nothing. {@link AllocationBudget} checks the allocation of the hot paths
+ * against fixed budgets.</p>
+ *
+ * <pre>
+ * java -Dconnect4.diagnostics=true -XX:StartFlightRecording=filename=calls.jfr -cp out LoadGenerator json
+ * </pre>
+ */
+public final class Diagnostics {
+    /**
+     * The measured {@link ConnectFourJSON} methods.
+     */
+    public enum Operation {
+        START_GAME("startGame"),
+        RESET_GAME("resetGame"),
+        END_GAME("endGame"),
+        TAKE_TURN("takeTurn"),
+        GET_GAME_STATE("getGameState"),
+        GET_LEGAL_MOVES("getLegalMoves"),
+        GET_WINNING_MOVES("getWinningMoves"),
+        GET_BLOCKING_MOVES("getBlockingMoves"),
+        GET_MOVE_STRING("getMoveString"),
+        PLAY_MOVES("playMoves");
+
+        private final String method;
+
+        Operation(String method) {
+            this.method = method;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    private static final boolean ENABLED = Boolean.getBoolean("connect4.diagnostics");
+    private static final long SLOW_NANOS = Long.getLong("connect4.slowMillis", 1) * 1_000_000;
+    private static final ThreadMXBean THREADS = threadBean();
+
+    // Per operation, indexed by ordinal
+    private static final LongAdder[] CALLS = adders();
+    private static final LongAdder[] NANOS = adders();
+    private static final LongAdder[] BYTES = adders();
+    private static final LongAdder[] MEASURED_CALLS = adders();
+    private static final LongAdder[] SLOW_CALLS = adders();
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> report(System.out), "diagnostics-report"));
+        }
+    }
+
+    private Diagnostics() {
+    }
+
+    /**
+     * Returns whether diagnostics mode is on.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns an API that measures every call to the given one in
+     * diagnostics mode, or the given API itself otherwise.
+     */
+    public static ConnectFourJSON wrap(ConnectFourJSON api) {
+        return ENABLED ? new InstrumentedConnectFour(api) : api;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if the
+     * JVM does not count them, as for virtual threads.
+     */
+    public static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    public static long getCalls(Operation operation) {
+        return CALLS[operation.ordinal()].sum();
+    }
+
+    /**
+     * Returns the bytes allocated by the calls whose allocation was measured.
+     */
+    public static long getAllocatedBytes(Operation operation) {
+        return BYTES[operation.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of calls whose allocation was measured, which
+     * excludes calls made on virtual threads.
+     */
+    public static long getMeasuredCalls(Operation operation) {
+        return MEASURED_CALLS[operation.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of calls that took longer than {@code connect4.slowMillis}.
+     */
+    public static long getSlowCalls(Operation operation) {
+        return SLOW_CALLS[operation.ordinal()].sum();
+    }
+
+    /**
+     * Prints the calls, mean time, mean allocation and slow calls of every
+     * operation called so far. Mean allocation is over the measured calls.
+     */
+    public static void report(PrintStream out) {
+        out.printf("%-18s %10s %10s %12s %8s%n", "operation", "calls", "mean us", "bytes/call", "slow");
+        for (Operation operation : Operation.values()) {
+            long calls = getCalls(operation);
+            if (calls > 0) {
+                int i = operation.ordinal();
+                long measured = MEASURED_CALLS[i].sum();
+                out.printf("%-18s %10d %10.2f %12s %8d%n", operation.getMethod(), calls,
+                        NANOS[i].sum() / 1e3 / calls, measured > 0 ? String.valueOf(BYTES[i].sum() / measured) : "n/a",
+                        SLOW_CALLS[i].sum());
+            }
+        }
+    }
+
+    /**
+     * Starts measuring a call on the current thread.
+     */
+    static ConnectFourCallEvent begin() {
+        ConnectFourCallEvent call = new ConnectFourCallEvent();
+        call.begin();
+        call.startBytes = allocatedBytes();
+        call.startNanos = System.nanoTime();
+        return call;
+    }
+
+    /**
+     * Finishes measuring a call started by {@link #begin()} on the same
+     * thread, and records it.
+     */
+    static void end(ConnectFourCallEvent call, Operation operation) {
+        long nanos = System.nanoTime() - call.startNanos;
+        long endBytes = allocatedBytes();
+        // -1 if either end of the call was not counted
+        long bytes = call.startBytes < 0 || endBytes < 0 ? -1 : endBytes - call.startBytes;
+        call.end();
+        boolean slow = nanos >= SLOW_NANOS;
+
+        int i = operation.ordinal();
+        CALLS[i].increment();
+        NANOS[i].add(nanos);
+        if (bytes >= 0) {
+            MEASURED_CALLS[i].increment();
+            BYTES[i].add(bytes);
+        }
+        if (slow) {
+            SLOW_CALLS[i].increment();
+            EventLog.shared().warn("slow-operation", EventLog.NO_GAME, String.format(
+                    "%s took %.2f ms, allocated %s bytes", operation.getMethod(), nanos / 1e6,
+                    bytes >= 0 ? String.valueOf(bytes) : "n/a"));
+        }
+        if (call.shouldCommit()) {
+            call.operation = operation.getMethod();
+            call.allocatedBytes = bytes;
+            call.slow = slow;
+            call.commit();
+        }
+    }
+
+    private static ThreadMXBean threadBean() {
+        try {
+            ThreadMXBean threads = ManagementFactory.getPlatformMXBean(ThreadMXBean.class);
+            if (threads == null || !threads.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            // Not a HotSpot-style JVM
+            return null;
+        }
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Operation.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
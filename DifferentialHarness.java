@@ -0,0 +1,411 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Differential verification harness for Connect 4 engines.
+ *
+ * <p>Plays large numbers of random and adversarial move sequences in parallel
+ * against a reference engine and one or more candidate engines, comparing
+ * whether each move was accepted, the winner and the full board after every
+ * ply. The first divergence found is shrunk to a minimal move sequence that
+ * still reproduces it.</p>
+ *
+ * <p>Random sequences only play legal moves and stop when the reference game is
+ * over. Adversarial sequences also play out-of-range columns, full columns and
+ * moves after the game has ended, and favor stacking the same columns to reach
+ * wins and full columns quickly.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java DifferentialHarness [--games N] [--threads T] [--seed S] [--size SIZE] [--reference NAME] CANDIDATE...
+ * </pre>
+ * Engines are named by class name, or as {@code game} for {@link Game} on an
+ * {@link ArrayBoardEngine}, the default reference, or {@code game-bitboard}
+ * for {@link Game} on the {@link BitBoardEngine} that production games use.
+ * {@code --size} picks a {@link BoardSize} such as {@code 8x7} or
+ * {@code 9x7:5}, standard by default; engines named by class play only the
+ * standard size. Exits with status 1 on a divergence, and 2 if an engine
+ * cannot be loaded or the run fails before playing every game.
+ */
+public class DifferentialHarness {
+    private static final int EXTRA_PLIES_AFTER_END = 4;
+
+    private final BoardSize size;
+    // Room for every cell and the illegal moves of adversarial sequences
+    private final int maxPlies;
+    private final String referenceName;
+    private final Supplier<ConnectFourEngine> reference;
+    private final List<String> candidateNames;
+    private final List<Supplier<ConnectFourEngine>> candidates;
+
+    public DifferentialHarness(String referenceName, Supplier<ConnectFourEngine> reference) {
+        this(referenceName, reference, BoardSize.STANDARD);
+    }
+
+    /**
+     * @param size the board size every engine plays
+     */
+    public DifferentialHarness(String referenceName, Supplier<ConnectFourEngine> reference, BoardSize size) {
+        this.size = size;
+        this.maxPlies = size.getCells() * 3 / 2 + 1;
+        this.referenceName = referenceName;
+        this.reference = reference;
+        this.candidateNames = new ArrayList<>();
+        this.candidates = new ArrayList<>();
+    }
+
+    /**
+     * Adds a candidate engine to compare against the reference.
+     *
+     * @param name name used in reports
+     * @param candidate creates a fresh engine instance for each worker thread
+     */
+    public void addCandidate(String name, Supplier<ConnectFourEngine> candidate) {
+        candidateNames.add(name);
+        candidates.add(candidate);
+    }
+
+    /**
+     * Plays {@code games} sequences spread across {@code threads} workers.
+     * Every fourth sequence is adversarial. The run stops early at the first
+     * divergence.
+     *
+     * @return the run report, including the shrunk divergence if one was found
+     * @throws IllegalStateException if an engine cannot be created or a worker
+     *         fails; the other workers stop early
+     */
+    public Report run(long games, int threads, long seed) throws InterruptedException {
+        // Fail before any worker starts if an engine cannot be created
+        reference.get();
+        for (Supplier<ConnectFourEngine> candidate : candidates) {
+            candidate.get();
+        }
+
+        AtomicLong gamesPlayed = new AtomicLong();
+        AtomicLong pliesPlayed = new AtomicLong();
+        AtomicReference<Divergence> found = new AtomicReference<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        SplittableRandom root = new SplittableRandom(seed);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long share = games / threads + (t < games % threads ? 1 : 0);
+            SplittableRandom random = root.split();
+            workers.add(pool.submit(() -> {
+                try {
+                    runWorker(share, random, gamesPlayed, pliesPlayed, found, failed);
+                } catch (RuntimeException | Error e) {
+                    failed.set(true);
+                    throw e;
+                }
+            }));
+        }
+        pool.shutdown();
+        Throwable failure = null;
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (failure != null) {
+            throw new IllegalStateException("Harness worker failed: " + failure, failure);
+        }
+
+        Divergence divergence = found.get();
+        if (divergence != null) {
+            divergence = shrink(divergence);
+        }
+        return new Report(gamesPlayed.get(), pliesPlayed.get(), elapsed, divergence);
+    }
+
+    private void runWorker(long games, SplittableRandom random, AtomicLong gamesPlayed,
+                           AtomicLong pliesPlayed, AtomicReference<Divergence> found, AtomicBoolean failed) {
+        ConnectFourEngine ref = reference.get();
+        ConnectFourEngine[] engines = new ConnectFourEngine[candidates.size()];
+        for (int i = 0; i < engines.length; i++) {
+            engines[i] = candidates.get(i).get();
+        }
+        int[] moves = new int[maxPlies];
+
+        long localGames = 0;
+        long localPlies = 0;
+        for (long g = 0; g < games && found.get() == null && !failed.get(); g++) {
+            boolean adversarial = (g & 3) == 3;
+            ref.reset();
+            for (ConnectFourEngine engine : engines) {
+                engine.reset();
+            }
+
+            int plies = 0;
+            int afterEnd = 0;
+            while (plies < maxPlies) {
+                if (ref.winner() != ConnectFourEngine.EMPTY) {
+                    if (!adversarial || afterEnd++ == EXTRA_PLIES_AFTER_END) {
+                        break;
+                    }
+                }
+                int column = adversarial ? adversarialMove(random, moves, plies) : randomLegalMove(random, ref);
+                moves[plies++] = column;
+
+                boolean expected = ref.play(column);
+                for (int i = 0; i < engines.length; i++) {
+                    boolean actual = engines[i].play(column);
+                    String mismatch = compare(ref, expected, engines[i], actual);
+                    if (mismatch != null) {
+                        found.compareAndSet(null, new Divergence(i, Arrays.copyOf(moves, plies), mismatch));
+                        break;
+                    }
+                }
+            }
+            localGames++;
+            localPlies += plies;
+        }
+        gamesPlayed.addAndGet(localGames);
+        pliesPlayed.addAndGet(localPlies);
+    }
+
+    private int randomLegalMove(SplittableRandom random, ConnectFourEngine ref) {
+        while (true) {
+            int column = random.nextInt(size.getColumns());
+            if (ref.cell(0, column) == ConnectFourEngine.EMPTY) {
+                return column;
+            }
+        }
+    }
+
+    private int adversarialMove(SplittableRandom random, int[] moves, int plies) {
+        int roll = random.nextInt(8);
+        if (plies >= 2 && roll < 3) {
+            // Stack on a recent column to build verticals and fill columns
+            return moves[plies - 1 - random.nextInt(2)];
+        }
+        if (roll == 3) {
+            return random.nextBoolean() ? -1 : size.getColumns();
+        }
+        return random.nextInt(size.getColumns());
+    }
+
+    private String compare(ConnectFourEngine ref, boolean expected, ConnectFourEngine candidate, boolean actual) {
+        if (expected != actual) {
+            return "move accepted: expected " + expected + " but was " + actual;
+        }
+        if (ref.winner() != candidate.winner()) {
+            return "winner: expected " + ref.winner() + " but was " + candidate.winner();
+        }
+        for (int row = 0; row < size.getRows(); row++) {
+            for (int col = 0; col < size.getColumns(); col++) {
+                if (ref.cell(row, col) != candidate.cell(row, col)) {
+                    return "cell (" + row + "," + col + "): expected " + ref.cell(row, col)
+                            + " but was " + candidate.cell(row, col);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replays a move sequence and returns the first mismatch for one candidate.
+     *
+     * @return a description of the mismatch, or null if the engines agree
+     */
+    public String replay(int candidate, int[] moves) {
+        ConnectFourEngine ref = reference.get();
+        ConnectFourEngine engine = candidates.get(candidate).get();
+        ref.reset();
+        engine.reset();
+        for (int column : moves) {
+            String mismatch = compare(ref, ref.play(column), engine, engine.play(column));
+            if (mismatch != null) {
+                return mismatch;
+            }
+        }
+        return null;
+    }
+
+    // Delta debugging: drop chunks of moves while the divergence still reproduces
+    private Divergence shrink(Divergence divergence) {
+        int[] moves = divergence.moves;
+        int chunk = Math.max(1, moves.length / 2);
+        while (true) {
+            boolean removed = false;
+            for (int from = 0; from + chunk <= moves.length; ) {
+                int[] candidate = new int[moves.length - chunk];
+                System.arraycopy(moves, 0, candidate, 0, from);
+                System.arraycopy(moves, from + chunk, candidate, from, moves.length - from - chunk);
+                if (replay(divergence.candidate, candidate) != null) {
+                    moves = candidate;
+                    removed = true;
+                } else {
+                    from++;
+                }
+            }
+            if (chunk == 1 && !removed) {
+                break;
+            }
+            if (!removed) {
+                chunk = Math.max(1, chunk / 2);
+            }
+        }
+        return new Divergence(divergence.candidate, moves, replay(divergence.candidate, moves));
+    }
+
+    /**
+     * The outcome of a harness run.
+     */
+    public class Report {
+        public final long games;
+        public final long plies;
+        public final long elapsedNanos;
+        public final Divergence divergence;
+
+        Report(long games, long plies, long elapsedNanos, Divergence divergence) {
+            this.games = games;
+            this.plies = plies;
+            this.elapsedNanos = elapsedNanos;
+            this.divergence = divergence;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d games, %d plies in %.2fs (%.0f games/s, %.0f plies/s)%n",
+                    games, plies, seconds, games / seconds, plies / seconds));
+            if (divergence == null) {
+                sb.append("No divergence from ").append(referenceName).append('\n');
+            } else {
+                sb.append("DIVERGENCE in ").append(candidateNames.get(divergence.candidate))
+                        .append(" after moves ").append(Arrays.toString(divergence.moves)).append('\n')
+                        .append("  ").append(divergence.description).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A move sequence on which a candidate disagrees with the reference.
+     */
+    public static class Divergence {
+        public final int candidate;
+        public final int[] moves;
+        public final String description;
+
+        Divergence(int candidate, int[] moves, String description) {
+            this.candidate = candidate;
+            this.moves = moves;
+            this.description = description;
+        }
+    }
+
+    /**
+     * Returns a supplier of the named engine on the standard board.
+     *
+     * @see #engineNamed(String, BoardSize)
+     */
+    static Supplier<ConnectFourEngine> engineNamed(String name) {
+        return engineNamed(name, BoardSize.STANDARD);
+    }
+
+    /**
+     * Returns a supplier of the named engine on a board size, resolving its
+     * class now.
+     *
+     * @throws IllegalArgumentException if no engine class with a no-argument
+     *         constructor has that name, or the engine cannot play that size
+     */
+    static Supplier<ConnectFourEngine> engineNamed(String name, BoardSize size) {
+        if (name.equals("game")) {
+            return () -> new GameEngine(new ArrayBoardEngine(size));
+        }
+        if (name.equals("game-bitboard")) {
+            if (!size.fitsBitBoard()) {
+                throw new IllegalArgumentException("A " + size + " board does not fit a bitboard; games of"
+                        + " that size are played on the array engine, the reference itself");
+            }
+            return () -> new GameEngine(new BitBoardEngine(size));
+        }
+        if (!size.isStandard()) {
+            throw new IllegalArgumentException("Engine " + name + " only plays the standard board, not " + size);
+        }
+        Constructor<? extends ConnectFourEngine> constructor;
+        try {
+            constructor = Class.forName(name).asSubclass(ConnectFourEngine.class).getDeclaredConstructor();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Cannot load engine " + name + ": " + e, e);
+        }
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create engine " + name, e);
+            }
+        };
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long games = 1_000_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        String referenceName = "game";
+        BoardSize size = BoardSize.STANDARD;
+        List<String> candidateNames = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games" -> games = Long.parseLong(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--size" -> size = BoardSize.parse(args[++i]);
+                case "--reference" -> referenceName = args[++i];
+                default -> candidateNames.add(args[i]);
+            }
+        }
+        if (candidateNames.isEmpty()) {
+            System.out.println("Usage: java DifferentialHarness [--games N] [--threads T] [--seed S] "
+                    + "[--size SIZE] [--reference NAME] CANDIDATE...");
+            return;
+        }
+
+        Report report;
+        try {
+            DifferentialHarness harness = new DifferentialHarness(referenceName, engineNamed(referenceName, size), size);
+            for (String name : candidateNames) {
+                harness.addCandidate(name, engineNamed(name, size));
+            }
+
+            System.out.println("Seed: " + seed);
+            report = harness.run(games, threads, seed);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.out.print(report);
+        if (report.divergence != null) {
+            System.exit(1);
+        }
+        if (report.games < games) {
+            // Only a divergence stops a run early
+            System.out.println("Only " + report.games + " of " + games + " games ran");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous sink for diagnostics and game lifecycle events.
+ *
+ * <p>Callers never wait for I/O: an event is copied into a preallocated ring
+ * of slots and a background thread writes it out, one JSON object per line.
+ * A caller claims a slot with a compare-and-set; if the writer has fallen a
+ * whole ring behind, the event is dropped and counted rather than blocking
+ * the caller, and the writer reports the number dropped in the log.</p>
+ *
+ * <p>The {@link #shared()} log writes to the file named by the
+ * {@code connect4.eventLog} system property, every event from
+ * {@link Level#INFO} up. Without it, warnings and errors go to standard
+ * output, as they did before, but still from the background thread.</p>
+ */
+public final class EventLog implements AutoCloseable {
+    /** Game id of events that do not belong to a game. */
+    public static final long NO_GAME = -1;
+    /** Slots in the ring unless given; a power of two. */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * How serious an event is.
+     */
+    public enum Level {
+        /** Lifecycle events, such as a game starting or ending. */
+        INFO,
+        /** Bad input or a recoverable failure. */
+        WARN,
+        /** A failure that lost data or stopped a component. */
+        ERROR
+    }
+
+    // One event; written by the caller that claimed it, then published by
+    // setting its sequence number
+    private static final class Slot {
+        volatile long sequence;
+        long timeMillis;
+        Level level;
+        String event;
+        long gameId;
+        String detail;
+    }
+
+    private static final class Holder {
+        static final EventLog SHARED = createShared();
+    }
+
+    private static final long SEALED = Long.MIN_VALUE;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final Level minimum;
+    private final Writer out;
+    private final boolean ownsOutput;
+    // Next sequence to claim; SEALED is set once closing, so no more are claimed
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long head;
+    private volatile long written;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+    private final Thread writer;
+
+    /**
+     * Creates a log appending to a file.
+     *
+     * @param capacity slots in the ring, rounded up to a power of two
+     */
+    public EventLog(Path file, int capacity, Level minimum) throws IOException {
+        this(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), true, capacity, minimum);
+    }
+
+    /**
+     * Creates a log writing to a stream, which is flushed but not closed on {@link #close()}.
+     *
+     * @param capacity slots in the ring, rounded up to a power of two
+     */
+    public EventLog(OutputStream stream, int capacity, Level minimum) {
+        this(stream, false, capacity, minimum);
+    }
+
+    private EventLog(OutputStream stream, boolean ownsOutput, int capacity, Level minimum) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.minimum = minimum;
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+        this.ownsOutput = ownsOutput;
+        this.writer = new Thread(this::drain, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns the log shared by the game classes, which is written out when the JVM exits.
+     */
+    public static EventLog shared() {
+        return Holder.SHARED;
+    }
+
+    private static EventLog createShared() {
+        String file = System.getProperty("connect4.eventLog");
+        EventLog log = null;
+        if (file != null) {
+            try {
+                log = new EventLog(Paths.get(file), DEFAULT_CAPACITY, Level.INFO);
+            } catch (IOException e) {
+                System.out.println("Failed to open event log " + file + ", using standard output: " + e.getMessage());
+            }
+        }
+        if (log == null) {
+            log = new EventLog(System.out, DEFAULT_CAPACITY, Level.WARN);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(log::close, "event-log-shutdown"));
+        return log;
+    }
+
+    /**
+     * Returns whether events of a level are recorded, so callers can skip
+     * building details that would be thrown away.
+     */
+    public boolean isLoggable(Level level) {
+        return level.compareTo(minimum) >= 0;
+    }
+
+    public boolean info(String event, long gameId, String detail) {
+        return log(Level.INFO, event, gameId, detail);
+    }
+
+    public boolean warn(String event, long gameId, String detail) {
+        return log(Level.WARN, event, gameId, detail);
+    }
+
+    public boolean error(String event, long gameId, String detail) {
+        return log(Level.ERROR, event, gameId, detail);
+    }
+
+    /**
+     * Queues an event for writing, without blocking.
+     *
+     * @param event a short name for what happened, such as {@code "game-start"}
+     * @param gameId the game it happened to, or {@link #NO_GAME}
+     * @param detail free text, or null
+     * @return true if the event was queued; false if it is below the log's
+     *         level, the ring is full or the log is closed
+     */
+    public boolean log(Level level, String event, long gameId, String detail) {
+        if (!isLoggable(level) || closed) {
+            return false;
+        }
+        long sequence;
+        do {
+            sequence = tail.get();
+            if ((sequence & SEALED) != 0) {
+                return false;
+            }
+            if (sequence - head > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        Slot slot = slots[(int) sequence & mask];
+        slot.timeMillis = System.currentTimeMillis();
+        slot.level = level;
+        slot.event = event;
+        slot.gameId = gameId;
+        slot.detail = detail;
+        slot.sequence = sequence + 1;
+        if (sleeping && sequence - head >= slots.length / 4) {
+            // Wake the writer early rather than let a burst fill the ring
+            sleeping = false;
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of events queued so far.
+     */
+    public long getPublished() {
+        return tail.get() & ~SEALED;
+    }
+
+    /**
+     * Returns the number of events written out so far.
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Returns the number of events dropped because the ring was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes out the queued events and stops the writer. Later events are ignored.
+     */
+    @Override
+    public void close() {
+        seal();
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventLog[written=" + getWritten() + ", dropped=" + getDropped() + ", level=" + minimum + "]";
+    }
+
+    // The writer thread: writes events in order, flushing whenever it catches
+    // up, and sleeps longer the longer the log stays idle
+    private void drain() {
+        StringBuilder line = new StringBuilder(256);
+        long reportedDrops = 0;
+        long idleNanos = 1_000_000;
+        boolean unflushed = false;
+        try {
+            while (true) {
+                Slot slot = slots[(int) head & mask];
+                if (slot.sequence == head + 1) {
+                    format(line, slot.timeMillis, slot.level, slot.event, slot.gameId, slot.detail);
+                    slot.event = null;
+                    slot.detail = null;
+                    head = head + 1;
+                    out.append(line);
+                    written = written + 1;
+                    unflushed = true;
+                    idleNanos = 1_000_000;
+                    continue;
+                }
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    format(line, System.currentTimeMillis(), Level.WARN, "events-dropped", NO_GAME,
+                            (drops - reportedDrops) + " events dropped, ring full");
+                    out.append(line);
+                    reportedDrops = drops;
+                    unflushed = true;
+                }
+                if (unflushed) {
+                    out.flush();
+                    unflushed = false;
+                }
+                // Events claimed before sealing are still being copied in
+                if (closed && head == (tail.get() & ~SEALED)) {
+                    break;
+                }
+                sleeping = true;
+                LockSupport.parkNanos(this, idleNanos);
+                sleeping = false;
+                idleNanos = Math.min(50_000_000, idleNanos * 2);
+            }
+            if (ownsOutput) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Nowhere left to report it but the console
+            System.out.println("Failed to write event log, events are being dropped: " + e.getMessage());
+            seal();
+        }
+    }
+
+    // Stops further events being claimed. Every event claimed before is still
+    // published, and the writer stops once it has written up to the seal.
+    private void seal() {
+        long sequence;
+        do {
+            sequence = tail.get();
+        } while ((sequence & SEALED) == 0 && !tail.compareAndSet(sequence, sequence | SEALED));
+        closed = true;
+    }
+
+    private static void format(StringBuilder line, long timeMillis, Level level, String event, long gameId, String detail) {
+        line.setLength(0);
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(timeMillis))
+                .append("\",\"level\":\"").append(level)
+                .append("\",\"event\":");
+        appendString(line, event);
+        if (gameId != NO_GAME) {
+            line.append(",\"game\":").append(gameId);
+        }
+        if (detail != null) {
+            line.append(",\"detail\":");
+            appendString(line, detail);
+        }
+        line.append("}\n");
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
@@ -1,20 +1,81 @@
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Game {
     private final Board board;
+    private final BoardSize size;
+    // Finds lines and playable columns; bits is the same engine when it is a
+    // bitboard, for positions on the standard board
+    private final BoardEngine engine;
+    private final BitBoardEngine bits;
     private Checker currentPlayerChecker;
-    private final String player1Name;
-    private final String player2Name;
-    private final Checker player1Checker;
+    private String player1Name;
+    private String player2Name;
+    private Checker player1Checker;
 
     private String winner;
     private boolean gameOver;
+
     private static final String DRAW_VALUE = "Draw";
 
+    // Clocks, unused while timeControl is null. The side to move's stored time
+    // excludes the turn in progress, which started at turnStartNanos.
+    private TimeControl timeControl;
+    private long redMillis;
+    private long blackMillis;
+    private long turnStartNanos;
+    private boolean lostOnTime;
+
+    // Counts changes to the game, across resets
+    private long version;
+
+    // Columns played so far, in order
+    private final byte[] moves;
+    private int moveCount;
+
+    // Bits of the compact form's result flags
+    private static final int OVER_FLAG = 1;
+    private static final int LOST_ON_TIME_FLAG = 2;
+
+    /** Upper bound on the size of {@link #writeTo(ByteBuffer)} output. */
+    public static final int MAX_COMPACT_BYTES = 28 + 2 * (2 + 4 * 20) + 1 + 4 * 8 + 1 + 42;
+
     public Game(String player1, String player2, Checker player1CheckerPreference){
-        this.board = new Board();
+        this(player1, player2, player1CheckerPreference, BoardSize.STANDARD);
+    }
+
+    /**
+     * Creates a game on a board of any size, played on a bitboard engine
+     * when the board fits in one.
+     */
+    public Game(String player1, String player2, Checker player1CheckerPreference, BoardSize size) {
+        this(player1, player2, player1CheckerPreference, BoardEngine.create(size));
+    }
+
+    /**
+     * Creates a game played on a given engine, such as an
+     * {@link ArrayBoardEngine} for a standard board to check the bitboard
+     * engine against.
+     */
+    Game(String player1, String player2, Checker player1CheckerPreference, BoardEngine engine) {
+        this.size = engine.getSize();
+        this.board = new Board(size.getRows(), size.getColumns());
+        this.engine = engine;
+        this.bits = engine instanceof BitBoardEngine ? (BitBoardEngine) engine : null;
+        this.moves = new byte[size.getCells()];
+        reset(player1, player2, player1CheckerPreference);
+    }
+
+    /**
+     * Starts a new game on this instance, clearing the board in place instead
+     * of allocating a new one.
+     */
+    public void reset(String player1, String player2, Checker player1CheckerPreference) {
+        board.clear();
+        engine.clear();
         this.currentPlayerChecker = player1CheckerPreference;
 
         this.player1Name = player1;
@@ -23,25 +84,53 @@ public class Game {
 
         this.winner = null;
         this.gameOver = false;
+        this.timeControl = null;
+        this.lostOnTime = false;
+        this.moveCount = 0;
+        version++;
+    }
+
+    /**
+     * Puts both players on the clock, starting the first player's time now.
+     * Called right after {@link #reset(String, String, Checker)}; null leaves
+     * the game untimed.
+     */
+    public void setTimeControl(TimeControl timeControl) {
+        this.timeControl = timeControl;
+        if (timeControl != null) {
+            this.redMillis = timeControl.getBaseMillis();
+            this.blackMillis = timeControl.getBaseMillis();
+            this.turnStartNanos = System.nanoTime();
+        }
+    }
+
+    public TimeControl getTimeControl() {
+        return timeControl;
     }
 
     public boolean takeTurn(int col) {
-        if (gameOver || col < 0 || col >= 7) {
+        if (checkTimeout() || gameOver || col < 0 || col >= size.getColumns()) {
             return false;
         }
 
-        boolean placed = dropChecker(col, currentPlayerChecker);
-        if (!placed) {
+        int row = engine.drop(col, currentPlayerChecker.ordinal());
+        if (row < 0) {
             return false;
         }
+        board.getSpace(row, col).setOccupiedBy(currentPlayerChecker);
+        moves[moveCount++] = (byte) col;
+        version++;
+        if (timeControl != null) {
+            chargeClock();
+        }
 
-        if (checkWin(currentPlayerChecker)) {
+        if (engine.completesLine(row, col)) {
             this.winner = currentPlayerChecker.toString();
             this.gameOver = true;
             return true;
         }
 
-        if (isBoardFull()) {
+        if (engine.isFull()) {
             this.winner = DRAW_VALUE;
             this.gameOver = true;
             return true;
@@ -52,78 +141,6 @@ public class Game {
         return true;
     }
 
-    private boolean dropChecker(int col, Checker checker) {
-        for (int row = 5; row >= 0; row--) {
-            Space space = board.getSpace(row, col);
-            if (!space.isOccupied()) {
-                space.setOccupiedBy(checker);
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean checkWin(Checker checker) {
-        // Horizontal
-        for (int row = 0; row < 6; row++) {
-            for (int col = 0; col <= 3; col++) {
-                if (checkLine(row, col, 0, 1, checker)) {
-                    return true;
-                }
-            }
-        }
-
-        // Vertical
-        for (int row = 0; row <= 2; row++) {
-            for (int col = 0; col < 7; col++) {
-                if (checkLine(row, col, 1, 0, checker)) {
-                    return true;
-                }
-            }
-        }
-
-        // Diagonal /
-        for (int row = 0; row <= 2; row++) {
-            for (int col = 0; col <= 3; col++) {
-                if (checkLine(row, col, 1, 1, checker)) {
-                    return true;
-                }
-            }
-        }
-
-        // Diagonal \
-        for (int row = 5; row >= 3; row--) {
-            for (int col = 0; col <= 3; col++) {
-                if (checkLine(row, col, -1, 1, checker)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
-    }
-
-    private boolean checkLine(int row, int col, int dRow, int dCol, Checker checker) {
-        for (int i = 0; i < 4; i++) {
-            Space space = board.getSpace(row + i * dRow, col + i * dCol);
-            if (space.getOccupiedBy() != checker) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private boolean isBoardFull() {
-        for (int row = 0; row < 6; row++) {
-            for (int col = 0; col < 7; col++) {
-                if (!board.getSpace(row, col).isOccupied()) {
-                    return false;
-                }
-            }
-        }
-        return true;
-    }
-
     public String getGameStateJson() {
         String cellsJson = getCellsJson();
 
@@ -132,17 +149,28 @@ public class Game {
         String winnerStr = winner != null ? ("\"" + winner + "\"") : "null";
         String player1Color = player1Checker.toString();
         String player2Color = player1Checker.opponent().toString();
+        String player1Time = timeControl != null ? Long.toString(getRemainingMillis(player1Checker)) : "null";
+        String player2Time = timeControl != null ? Long.toString(getRemainingMillis(player1Checker.opponent())) : "null";
+
+        String dimensions = size.isStandard() ? "" : String.format("""
+                    "rows": %d,
+                    "columns": %d,
+                    "connect": %d,
+                """, size.getRows(), size.getColumns(), size.getConnect());
 
         return String.format("""
                 {
-                    "cells": %s,
+                %s    "cells": %s,
                     "currentPlayerName": %s,
                     "currentPlayerChecker": %s,
                     "player1Color": %s,
                     "player2Color": %s,
+                    "player1TimeMillis": %s,
+                    "player2TimeMillis": %s,
                     "winner": %s
                 }
-                """, cellsJson, currentPlayerStr, currentPlayerChecker.toString(), player1Color, player2Color,   winnerStr);
+                """, dimensions, cellsJson, currentPlayerStr, currentPlayerChecker.toString(), player1Color, player2Color,
+                player1Time, player2Time, winnerStr);
     }
 
     private String getCurrentPlayerName() {
@@ -153,8 +181,8 @@ public class Game {
     private String getCellsJson() {
         List<String> cells = new ArrayList<>();
 
-        for (int row = 0; row < 6; row++) {
-            for (int col = 0; col < 7; col++) {
+        for (int row = 0; row < size.getRows(); row++) {
+            for (int col = 0; col < size.getColumns(); col++) {
                 Checker checker = board.getSpace(row, col).getOccupiedBy();
                 String value = checker != null ? "\"" + checker + "\"" : "null";
                 cells.add(value);
@@ -165,6 +193,348 @@ public class Game {
     }
 
     public void endGame() {
+        stopClock();
+        this.gameOver = true;
+        version++;
+    }
+
+    /**
+     * Returns a number that increases whenever the game changes: on every
+     * move, reset, end or loss on time. It survives {@link #writeTo(ByteBuffer)}.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns a player's remaining time, counting the turn in progress, or -1
+     * if the game is untimed. Clocks stop when the game ends.
+     */
+    public long getRemainingMillis(Checker checker) {
+        if (timeControl == null) {
+            return -1;
+        }
+        long stored = checker == Checker.RED ? redMillis : blackMillis;
+        if (gameOver || checker != currentPlayerChecker) {
+            return stored;
+        }
+        return Math.max(0, stored - (System.nanoTime() - turnStartNanos) / 1_000_000);
+    }
+
+    /**
+     * Returns how long the player to move has before losing on time, or
+     * {@link Long#MAX_VALUE} if the game is untimed or over.
+     */
+    public long getMillisUntilTimeout() {
+        if (timeControl == null || gameOver) {
+            return Long.MAX_VALUE;
+        }
+        return getRemainingMillis(currentPlayerChecker);
+    }
+
+    /**
+     * Ends the game as a loss for the player to move if their time has run
+     * out. Timeouts are only detected when this or {@link #takeTurn(int)} is
+     * called, so hosts call it when a clock is due to expire.
+     *
+     * @return true if the player to move lost on time by this call
+     */
+    public boolean checkTimeout() {
+        if (getMillisUntilTimeout() > 0) {
+            return false;
+        }
+        setStoredMillis(currentPlayerChecker, 0);
+        this.winner = currentPlayerChecker.opponent().toString();
         this.gameOver = true;
+        this.lostOnTime = true;
+        version++;
+        return true;
+    }
+
+    /**
+     * Returns true if the game ended because a player ran out of time.
+     */
+    public boolean isLostOnTime() {
+        return lostOnTime;
+    }
+
+    // Ends the mover's turn: deducts the time it took and adds the increment
+    private void chargeClock() {
+        long now = System.nanoTime();
+        long used = (now - turnStartNanos) / 1_000_000;
+        long stored = currentPlayerChecker == Checker.RED ? redMillis : blackMillis;
+        setStoredMillis(currentPlayerChecker, Math.max(0, stored - used) + timeControl.getIncrementMillis());
+        this.turnStartNanos = now;
+    }
+
+    private void stopClock() {
+        if (timeControl != null && !gameOver) {
+            setStoredMillis(currentPlayerChecker, getRemainingMillis(currentPlayerChecker));
+        }
+    }
+
+    private void setStoredMillis(Checker checker, long millis) {
+        if (checker == Checker.RED) {
+            this.redMillis = millis;
+        } else {
+            this.blackMillis = millis;
+        }
+    }
+
+    /**
+     * Returns the columns that can still be played, as a bitmask with bit
+     * {@code c} set for column {@code c}. Returns 0 once the game is over.
+     */
+    public int getLegalMoveMask() {
+        if (gameOver) {
+            return 0;
+        }
+        return engine.legalColumns();
+    }
+
+    /**
+     * Returns the columns in which the current player wins immediately.
+     * Returns 0 once the game is over.
+     */
+    public int getWinningMoveMask() {
+        if (gameOver) {
+            return 0;
+        }
+        return engine.winningColumns(currentPlayerChecker.ordinal());
+    }
+
+    /**
+     * Returns the columns the current player must play to stop the opponent
+     * winning on their next move. Returns 0 once the game is over.
+     */
+    public int getBlockingMoveMask() {
+        if (gameOver) {
+            return 0;
+        }
+        return engine.winningColumns(currentPlayerChecker.opponent().ordinal());
+    }
+
+    /**
+     * Returns a bitboard copy of the current position, with the player whose
+     * turn it is by move count as the side to move.
+     *
+     * @throws IllegalStateException if the board is not the standard size
+     */
+    public Position getPosition() {
+        requireStandard();
+        long mask = stonesOf(Checker.RED) | stonesOf(Checker.BLACK);
+        Checker toMove = Long.bitCount(mask) % 2 == 0 ? player1Checker : player1Checker.opponent();
+        return new Position(stonesOf(toMove), mask);
+    }
+
+    /**
+     * Returns a key shared by this position and its mirror image, for caches
+     * and lookups keyed by position.
+     *
+     * @see Position#canonicalKey()
+     */
+    public long getCanonicalKey() {
+        return getPosition().canonicalKey();
+    }
+
+    private long stonesOf(Checker checker) {
+        return bits.getStones(checker.ordinal());
+    }
+
+    // Positions, the solver and the compact form all assume BitBoard's 7x6 layout
+    private void requireStandard() {
+        if (bits == null || !size.isStandard()) {
+            throw new IllegalStateException("Only available for standard " + BoardSize.STANDARD + " games");
+        }
+    }
+
+    /**
+     * Returns the size of the board and the line length needed to win.
+     */
+    public BoardSize getSize() {
+        return size;
+    }
+
+    /**
+     * Writes the game in a compact binary form: the version, both bitboards,
+     * the checkers, the result and whether it was a loss on time, the player names, any clocks and the moves, in at most
+     * {@link #MAX_COMPACT_BYTES}. Clocks are written as they stand now; the
+     * turn in progress resumes when the game is read back.
+     *
+     * @throws IllegalStateException if the board is not the standard size
+     */
+    public void writeTo(ByteBuffer buffer) {
+        requireStandard();
+        buffer.putLong(version);
+        buffer.putLong(stonesOf(Checker.RED));
+        buffer.putLong(stonesOf(Checker.BLACK));
+        buffer.put((byte) player1Checker.ordinal());
+        buffer.put((byte) currentPlayerChecker.ordinal());
+        buffer.put(winnerCode());
+        buffer.put((byte) ((gameOver ? OVER_FLAG : 0) | (lostOnTime ? LOST_ON_TIME_FLAG : 0)));
+        putName(buffer, player1Name);
+        putName(buffer, player2Name);
+        buffer.put((byte) (timeControl != null ? 1 : 0));
+        if (timeControl != null) {
+            buffer.putLong(timeControl.getBaseMillis());
+            buffer.putLong(timeControl.getIncrementMillis());
+            buffer.putLong(getRemainingMillis(Checker.RED));
+            buffer.putLong(getRemainingMillis(Checker.BLACK));
+        }
+        buffer.put((byte) moveCount);
+        buffer.put(moves, 0, moveCount);
+    }
+
+    /**
+     * Replaces this game's state, in place, with one written by {@link #writeTo(ByteBuffer)}.
+     *
+     * @throws IllegalStateException if the board is not the standard size
+     */
+    public void readFrom(ByteBuffer buffer) {
+        requireStandard();
+        long savedVersion = buffer.getLong();
+        long red = buffer.getLong();
+        long black = buffer.getLong();
+        Checker[] checkers = Checker.values();
+        Checker firstChecker = checkers[buffer.get()];
+        Checker current = checkers[buffer.get()];
+        byte winnerCode = buffer.get();
+        byte flags = buffer.get();
+        String name1 = getName(buffer);
+        String name2 = getName(buffer);
+        TimeControl clock = null;
+        long redTime = 0;
+        long blackTime = 0;
+        if (buffer.get() != 0) {
+            clock = new TimeControl(buffer.getLong(), buffer.getLong());
+            redTime = buffer.getLong();
+            blackTime = buffer.getLong();
+        }
+        int count = buffer.get();
+
+        reset(name1, name2, firstChecker);
+        for (int row = 0; row < BitBoard.ROWS; row++) {
+            for (int col = 0; col < BitBoard.COLUMNS; col++) {
+                long cell = BitBoard.cell(row, col);
+                Checker checker = (red & cell) != 0 ? Checker.RED : (black & cell) != 0 ? Checker.BLACK : null;
+                if (checker != null) {
+                    board.getSpace(row, col).setOccupiedBy(checker);
+                    engine.set(row, col, checker.ordinal());
+                }
+            }
+        }
+        this.currentPlayerChecker = current;
+        this.winner = winnerCode == 0 ? null : winnerCode == 3 ? DRAW_VALUE : checkers[winnerCode - 1].toString();
+        this.gameOver = (flags & OVER_FLAG) != 0;
+        this.lostOnTime = (flags & LOST_ON_TIME_FLAG) != 0;
+        setTimeControl(clock);
+        this.redMillis = redTime;
+        this.blackMillis = blackTime;
+        this.version = savedVersion;
+        buffer.get(moves, 0, count);
+        this.moveCount = count;
+    }
+
+    /**
+     * Returns the version of a game written by {@link #writeTo(ByteBuffer)},
+     * without reading the rest or moving the buffer's position.
+     */
+    public static long versionOf(ByteBuffer state) {
+        return state.getLong(state.position());
+    }
+
+    private byte winnerCode() {
+        if (winner == null) {
+            return 0;
+        }
+        if (winner.equals(DRAW_VALUE)) {
+            return 3;
+        }
+        return (byte) (Checker.valueOf(winner).ordinal() + 1);
+    }
+
+    private static void putName(ByteBuffer buffer, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getName(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public String getPlayer1Name() {
+        return player1Name;
+    }
+
+    public String getPlayer2Name() {
+        return player2Name;
+    }
+
+    /**
+     * Returns the number of moves played so far.
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Returns the column played on a ply, counting from 0.
+     *
+     * @throws IndexOutOfBoundsException if the ply has not been played
+     */
+    public int getMove(int ply) {
+        if (ply < 0 || ply >= moveCount) {
+            throw new IndexOutOfBoundsException("Ply " + ply + " of " + moveCount);
+        }
+        return moves[ply];
+    }
+
+    /**
+     * Returns the moves played so far in move notation.
+     *
+     * @see MoveNotation
+     */
+    public String getMoveString() {
+        char[] digits = new char[moveCount];
+        for (int ply = 0; ply < moveCount; ply++) {
+            digits[ply] = MoveNotation.digitOf(moves[ply]);
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Plays moves given in move notation, stopping at the first one that is
+     * not a column or cannot be played.
+     *
+     * @return true if every move was played
+     * @see MoveNotation
+     */
+    public boolean playMoves(CharSequence notation) {
+        for (int i = 0; i < notation.length(); i++) {
+            int column = MoveNotation.columnOf(notation.charAt(i), size.getColumns());
+            if (column < 0 || !takeTurn(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Checker getCheckerAt(int row, int col) {
+        return board.getSpace(row, col).getOccupiedBy();
+    }
+
+    public Checker getPlayer1Checker() {
+        return player1Checker;
+    }
+
+    public String getWinner() {
+        return winner;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
     }
 }
@@ -0,0 +1,622 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append-only archive of finished games, stored column-wise for fast
+ * aggregate queries such as win rate by opening.
+ *
+ * <p>Games are kept in segment files of {@link #SEGMENT_GAMES} games. Each
+ * segment holds one column per field, so a query reads only the columns it
+ * needs:</p>
+ * <ul>
+ *  <li>the moves, 3 bits per ply, as two longs per game: plies 0-20 in the
+ *  first column, plies 21-41 in the second;</li>
+ *  <li>the winner, one byte per game, as a {@link ConnectFourEngine} winner:
+ *  {@code FIRST}, {@code SECOND}, {@code DRAW}, or {@code EMPTY} for a game
+ *  ended without a result;</li>
+ *  <li>the length in plies, one byte per game;</li>
+ *  <li>the ids of the first and second player, an int per game each. Ids are
+ *  assigned to player names in order of first appearance and kept in a
+ *  separate players file.</li>
+ * </ul>
+ *
+ * <p>Segments are memory-mapped. A segment's header records how many of its
+ * games are complete; it is updated after a game's columns are written, so a
+ * crash never leaves a partly written game visible. Queries scan the segments
+ * in parallel on the archive's daemon threads, which are kept between queries,
+ * and see every game appended before they start.</p>
+ *
+ * <p>Only standard 7x6 games can be archived. Close the archive when done
+ * with it to release its players file and query threads.</p>
+ */
+public class GameArchive implements AutoCloseable {
+    /** Number of games in a segment file. */
+    public static final int SEGMENT_GAMES = 1 << 20;
+
+    private static final int MAGIC = 0x43344152;
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int COUNT_OFFSET = 12;
+    private static final int PLIES_PER_WORD = 21;
+    private static final long LOW_MOVES = HEADER_BYTES;
+    private static final long HIGH_MOVES = LOW_MOVES + 8L * SEGMENT_GAMES;
+    private static final long WINNERS = HIGH_MOVES + 8L * SEGMENT_GAMES;
+    private static final long LENGTHS = WINNERS + SEGMENT_GAMES;
+    private static final long FIRST_PLAYERS = LENGTHS + SEGMENT_GAMES;
+    private static final long SECOND_PLAYERS = FIRST_PLAYERS + 4L * SEGMENT_GAMES;
+    private static final long SEGMENT_BYTES = SECOND_PLAYERS + 4L * SEGMENT_GAMES;
+    private static final int CHUNK_GAMES = 1 << 16;
+    private static final String PREFIX = "games-";
+    private static final String SUFFIX = ".seg";
+    private static final String PLAYERS_FILE = "players.dat";
+
+    /**
+     * Totals over a set of archived games. Win counts are from the point of
+     * view of the player who moved first.
+     */
+    public static final class Stats {
+        private long games;
+        private long firstPlayerWins;
+        private long secondPlayerWins;
+        private long draws;
+        private final long[] lengths = new long[BitBoard.ROWS * BitBoard.COLUMNS + 1];
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getFirstPlayerWins() {
+            return firstPlayerWins;
+        }
+
+        public long getSecondPlayerWins() {
+            return secondPlayerWins;
+        }
+
+        public long getDraws() {
+            return draws;
+        }
+
+        /**
+         * Returns the number of games ended without a result.
+         */
+        public long getUnfinished() {
+            return games - firstPlayerWins - secondPlayerWins - draws;
+        }
+
+        /**
+         * Returns the share of games won by the first player, or 0 if there are none.
+         */
+        public double getFirstPlayerWinRate() {
+            return games == 0 ? 0 : (double) firstPlayerWins / games;
+        }
+
+        /**
+         * Returns the number of games that lasted exactly {@code plies} moves.
+         */
+        public long getLengthCount(int plies) {
+            return lengths[plies];
+        }
+
+        public double getAverageLength() {
+            long total = 0;
+            for (int plies = 0; plies < lengths.length; plies++) {
+                total += plies * lengths[plies];
+            }
+            return games == 0 ? 0 : (double) total / games;
+        }
+
+        private void add(int winner, int length) {
+            games++;
+            lengths[length]++;
+            if (winner == ConnectFourEngine.FIRST) {
+                firstPlayerWins++;
+            } else if (winner == ConnectFourEngine.SECOND) {
+                secondPlayerWins++;
+            } else if (winner == ConnectFourEngine.DRAW) {
+                draws++;
+            }
+        }
+
+        private void merge(Stats other) {
+            games += other.games;
+            firstPlayerWins += other.firstPlayerWins;
+            secondPlayerWins += other.secondPlayerWins;
+            draws += other.draws;
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] += other.lengths[i];
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games, first player wins %.1f%%, second %.1f%%, draws %.1f%%, average %.1f plies",
+                    games, 100.0 * firstPlayerWins / Math.max(1, games), 100.0 * secondPlayerWins / Math.max(1, games),
+                    100.0 * draws / Math.max(1, games), getAverageLength());
+        }
+    }
+
+    private final Path directory;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Map<String, Integer> playerIds = new HashMap<>();
+    private final List<String> playerNames = new ArrayList<>();
+    private final FileChannel players;
+    private int count;
+    private boolean closed;
+    private volatile int threads = Runtime.getRuntime().availableProcessors();
+    private final ExecutorService queryPool = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "archive-query");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Opens an archive directory, creating it if needed.
+     *
+     * @throws UncheckedIOException if the archive cannot be read or created
+     */
+    public GameArchive(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            for (int index : segmentIndexes()) {
+                if (index != segments.size()) {
+                    throw new IOException("Missing archive segment " + segments.size() + " in " + directory);
+                }
+                MappedByteBuffer segment = map(index);
+                if (segment.getInt(0) != MAGIC || segment.getInt(4) != FORMAT) {
+                    throw new IOException("Not an archive segment: " + segmentFile(index));
+                }
+                segments.add(segment);
+            }
+            if (!segments.isEmpty()) {
+                count = segments.get(segments.size() - 1).getInt(COUNT_OFFSET);
+            }
+            this.players = FileChannel.open(directory.resolve(PLAYERS_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            loadPlayers();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sets how many threads queries use; by default, one per core.
+     */
+    public void setQueryThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Archives a game in its current state.
+     *
+     * @throws IllegalArgumentException if the game is not on a standard 7x6 board
+     */
+    public synchronized void append(Game game) {
+        if (!game.getSize().isStandard()) {
+            throw new IllegalArgumentException("Only standard 7x6 games can be archived, not " + game.getSize());
+        }
+        int length = game.getMoveCount();
+        long low = 0;
+        long high = 0;
+        for (int ply = 0; ply < length; ply++) {
+            long column = game.getMove(ply);
+            if (ply < PLIES_PER_WORD) {
+                low |= column << (3 * ply);
+            } else {
+                high |= column << (3 * (ply - PLIES_PER_WORD));
+            }
+        }
+        append(low, high, winnerOf(game), length, playerId(game.getPlayer1Name()), playerId(game.getPlayer2Name()));
+    }
+
+    /**
+     * Archives a game given its moves and result.
+     *
+     * @param moves columns played, in order
+     * @param winner a {@link ConnectFourEngine} winner, from the first player's point of view
+     * @param firstPlayer name of the player who moved first
+     * @param secondPlayer name of the other player
+     * @throws IllegalArgumentException if there are more moves than a 7x6 board holds, or a column is out of range
+     */
+    public void append(int[] moves, int winner, String firstPlayer, String secondPlayer) {
+        append(moves, moves.length, winner, firstPlayer, secondPlayer);
+    }
+
+    /**
+     * Archives a game given the first {@code length} entries of a moves array.
+     *
+     * @see #append(int[], int, String, String)
+     */
+    public synchronized void append(int[] moves, int length, int winner, String firstPlayer, String secondPlayer) {
+        if (length > BitBoard.ROWS * BitBoard.COLUMNS) {
+            throw new IllegalArgumentException("More moves than a game: " + length);
+        }
+        long low = 0;
+        long high = 0;
+        for (int ply = 0; ply < length; ply++) {
+            if (moves[ply] < 0 || moves[ply] >= BitBoard.COLUMNS) {
+                throw new IllegalArgumentException("Column out of range at ply " + ply + ": " + moves[ply]);
+            }
+            if (ply < PLIES_PER_WORD) {
+                low |= (long) moves[ply] << (3 * ply);
+            } else {
+                high |= (long) moves[ply] << (3 * (ply - PLIES_PER_WORD));
+            }
+        }
+        append(low, high, winner, length, playerId(firstPlayer), playerId(secondPlayer));
+    }
+
+    private void append(long low, long high, int winner, int length, int firstPlayer, int secondPlayer) {
+        if (closed) {
+            throw new IllegalStateException("Archive is closed");
+        }
+        if (segments.isEmpty() || count == SEGMENT_GAMES) {
+            addSegment();
+        }
+        MappedByteBuffer segment = segments.get(segments.size() - 1);
+        int row = count;
+        segment.putLong((int) (LOW_MOVES + 8L * row), low);
+        segment.putLong((int) (HIGH_MOVES + 8L * row), high);
+        segment.put((int) (WINNERS + row), (byte) winner);
+        segment.put((int) (LENGTHS + row), (byte) length);
+        segment.putInt((int) (FIRST_PLAYERS + 4L * row), firstPlayer);
+        segment.putInt((int) (SECOND_PLAYERS + 4L * row), secondPlayer);
+        count = row + 1;
+        segment.putInt(COUNT_OFFSET, count);
+    }
+
+    /**
+     * Returns the number of archived games.
+     */
+    public synchronized long size() {
+        return segments.isEmpty() ? 0 : (long) (segments.size() - 1) * SEGMENT_GAMES + count;
+    }
+
+    /**
+     * Returns the name of a player id found in the archive, or null if unknown.
+     */
+    public synchronized String getPlayerName(int id) {
+        return id > 0 && id <= playerNames.size() ? playerNames.get(id - 1) : null;
+    }
+
+    /**
+     * Writes archived games through to disk.
+     */
+    public synchronized void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Writes archived games through to disk, then releases the players file
+     * and the query threads. Appends and queries fail after this; closing
+     * again does nothing.
+     *
+     * @throws UncheckedIOException if the players file cannot be closed
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        queryPool.shutdown();
+        try {
+            players.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns totals over the games that began with the given columns.
+     */
+    public Stats query(int... prefix) {
+        return scan(prefix)[BitBoard.COLUMNS];
+    }
+
+    /**
+     * Returns totals over the games that began with the given columns, split
+     * by the column played next. With no prefix this gives the popularity and
+     * win rate of each first move.
+     *
+     * @return stats indexed by next column; games that ended after the prefix are in none
+     */
+    public Stats[] queryNextColumns(int... prefix) {
+        Stats[] stats = scan(prefix);
+        Stats[] byColumn = new Stats[BitBoard.COLUMNS];
+        System.arraycopy(stats, 0, byColumn, 0, byColumn.length);
+        return byColumn;
+    }
+
+    // Scans every archived game in parallel chunks. Returns stats per next
+    // column, and for all matching games at index COLUMNS.
+    private Stats[] scan(int[] prefix) {
+        if (prefix.length > BitBoard.ROWS * BitBoard.COLUMNS) {
+            throw new IllegalArgumentException("Prefix longer than a game");
+        }
+        List<MappedByteBuffer> snapshot;
+        int lastCount;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Archive is closed");
+            }
+            snapshot = new ArrayList<>(segments);
+            lastCount = count;
+        }
+        int chunksPerSegment = SEGMENT_GAMES / CHUNK_GAMES;
+        int chunks = snapshot.size() * chunksPerSegment;
+
+        long lowPrefix = 0;
+        long highPrefix = 0;
+        for (int ply = 0; ply < prefix.length; ply++) {
+            if (ply < PLIES_PER_WORD) {
+                lowPrefix |= (long) prefix[ply] << (3 * ply);
+            } else {
+                highPrefix |= (long) prefix[ply] << (3 * (ply - PLIES_PER_WORD));
+            }
+        }
+        long lowMask = maskOf(Math.min(prefix.length, PLIES_PER_WORD));
+        long highMask = maskOf(Math.max(0, prefix.length - PLIES_PER_WORD));
+        long lowValue = lowPrefix;
+        long highValue = highPrefix;
+
+        AtomicInteger next = new AtomicInteger();
+        List<Stats[]> partials = Collections.synchronizedList(new ArrayList<>());
+        int workers = Math.max(1, Math.min(threads, chunks));
+        CountDownLatch done = new CountDownLatch(workers);
+        Runnable worker = () -> {
+            try {
+                Stats[] local = newStats();
+                for (int chunk = next.getAndIncrement(); chunk < chunks; chunk = next.getAndIncrement()) {
+                    int index = chunk / chunksPerSegment;
+                    int limit = index == snapshot.size() - 1 ? lastCount : SEGMENT_GAMES;
+                    int from = (chunk % chunksPerSegment) * CHUNK_GAMES;
+                    int to = Math.min(limit, from + CHUNK_GAMES);
+                    scanChunk(snapshot.get(index), from, to, prefix.length, lowMask, lowValue, highMask, highValue, local);
+                }
+                partials.add(local);
+            } finally {
+                done.countDown();
+            }
+        };
+        // The calling thread scans too, so a single-threaded query needs no pool
+        for (int t = 1; t < workers; t++) {
+            queryPool.execute(worker);
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Stats[] total = newStats();
+        for (Stats[] partial : partials) {
+            for (int i = 0; i < total.length; i++) {
+                total[i].merge(partial[i]);
+            }
+        }
+        return total;
+    }
+
+    private static void scanChunk(MappedByteBuffer segment, int from, int to, int plies,
+                                  long lowMask, long lowValue, long highMask, long highValue, Stats[] stats) {
+        for (int row = from; row < to; row++) {
+            long low = segment.getLong((int) (LOW_MOVES + 8L * row));
+            if ((low & lowMask) != lowValue) {
+                continue;
+            }
+            int length = segment.get((int) (LENGTHS + row));
+            if (length < plies) {
+                continue;
+            }
+            long high = 0;
+            if (plies >= PLIES_PER_WORD) {
+                high = segment.getLong((int) (HIGH_MOVES + 8L * row));
+                if ((high & highMask) != highValue) {
+                    continue;
+                }
+            }
+            int winner = segment.get((int) (WINNERS + row));
+            stats[BitBoard.COLUMNS].add(winner, length);
+            if (length > plies) {
+                int column = plies < PLIES_PER_WORD
+                        ? (int) (low >>> (3 * plies)) & 7
+                        : (int) (high >>> (3 * (plies - PLIES_PER_WORD))) & 7;
+                stats[column].add(winner, length);
+            }
+        }
+    }
+
+    private static long maskOf(int plies) {
+        return plies == 0 ? 0 : -1L >>> (64 - 3 * plies);
+    }
+
+    private static Stats[] newStats() {
+        Stats[] stats = new Stats[BitBoard.COLUMNS + 1];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new Stats();
+        }
+        return stats;
+    }
+
+    private static int winnerOf(Game game) {
+        String winner = game.getWinner();
+        if (winner == null) {
+            return ConnectFourEngine.EMPTY;
+        }
+        if (winner.equals(game.getPlayer1Checker().toString())) {
+            return ConnectFourEngine.FIRST;
+        }
+        if (winner.equals(game.getPlayer1Checker().opponent().toString())) {
+            return ConnectFourEngine.SECOND;
+        }
+        return ConnectFourEngine.DRAW;
+    }
+
+    private int playerId(String name) {
+        if (closed) {
+            throw new IllegalStateException("Archive is closed");
+        }
+        Integer id = playerIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(2 + bytes.length);
+        record.putShort((short) bytes.length).put(bytes).flip();
+        try {
+            while (record.hasRemaining()) {
+                players.write(record, players.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        playerNames.add(name);
+        playerIds.put(name, playerNames.size());
+        return playerNames.size();
+    }
+
+    private void loadPlayers() throws IOException {
+        ByteBuffer all = ByteBuffer.allocate((int) players.size());
+        while (all.hasRemaining() && players.read(all, all.position()) > 0) {
+            // read until full
+        }
+        all.flip();
+        while (all.remaining() >= 2) {
+            byte[] bytes = new byte[all.getShort()];
+            all.get(bytes);
+            String name = new String(bytes, StandardCharsets.UTF_8);
+            playerNames.add(name);
+            playerIds.put(name, playerNames.size());
+        }
+    }
+
+    private void addSegment() {
+        int index = segments.size();
+        try {
+            MappedByteBuffer segment = map(index);
+            segment.putInt(0, MAGIC);
+            segment.putInt(4, FORMAT);
+            segment.putInt(8, SEGMENT_GAMES);
+            segment.putInt(COUNT_OFFSET, 0);
+            segments.add(segment);
+            count = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile(index), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            return segment;
+        }
+    }
+
+    private Path segmentFile(int index) {
+        return directory.resolve(PREFIX + String.format("%06d", index) + SUFFIX);
+    }
+
+    private List<Integer> segmentIndexes() throws IOException {
+        List<Integer> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                indexes.add(Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    // Plays random games to completion into the archive, for trying out queries
+    static void appendRandomGames(GameArchive archive, long games, long seed) {
+        long[] random = {seed | 1};
+        int[] moves = new int[BitBoard.ROWS * BitBoard.COLUMNS];
+        Position empty = new Position();
+        Position position = new Position();
+        for (long g = 0; g < games; g++) {
+            position.set(empty);
+            int length = 0;
+            int winner = ConnectFourEngine.DRAW;
+            while (length < moves.length) {
+                int legal = position.legalColumns();
+                long state = random[0];
+                state ^= state << 13;
+                state ^= state >>> 7;
+                state ^= state << 17;
+                random[0] = state;
+                int pick = (int) ((state >>> 33) % Integer.bitCount(legal));
+                for (int i = 0; i < pick; i++) {
+                    legal &= legal - 1;
+                }
+                int column = Integer.numberOfTrailingZeros(legal);
+                boolean wins = position.isWinningMove(column);
+                position.play(column);
+                moves[length++] = column;
+                if (wins) {
+                    winner = length % 2 == 1 ? ConnectFourEngine.FIRST : ConnectFourEngine.SECOND;
+                    break;
+                }
+            }
+            archive.append(moves, length, winner, "random", "random");
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length >= 3 && args[0].equals("generate")) {
+            try (GameArchive archive = new GameArchive(Paths.get(args[1]))) {
+                appendRandomGames(archive, Long.parseLong(args[2]), args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime());
+                System.out.println(archive.size() + " games archived");
+            }
+        } else if (args.length >= 2 && args[0].equals("query")) {
+            int[] prefix;
+            try {
+                prefix = MoveNotation.parse(args.length > 2 ? args[2] : "");
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+                return;
+            }
+            try (GameArchive archive = new GameArchive(Paths.get(args[1]))) {
+                long begin = System.nanoTime();
+                Stats[] byColumn = archive.scan(prefix);
+                double seconds = (System.nanoTime() - begin) / 1e9;
+                System.out.println("all: " + byColumn[BitBoard.COLUMNS]);
+                for (int column = 0; column < BitBoard.COLUMNS; column++) {
+                    System.out.println("then " + MoveNotation.digitOf(column) + ": " + byColumn[column]);
+                }
+                System.out.printf("scanned %d games in %.3f s%n", archive.size(), seconds);
+            }
+        } else {
+            System.out.println("Usage: java GameArchive generate DIR GAMES [SEED]");
+            System.out.println("       java GameArchive query DIR [MOVES]   (MOVES in move notation, columns 1-7)");
+        }
+    }
+}
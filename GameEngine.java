@@ -0,0 +1,54 @@
+/**
+ * {@link ConnectFourEngine} backed by {@link Game}.
+ *
+ * <p>By default the game is played on a standard {@link ArrayBoardEngine}, so
+ * as a reference it shares no line detection with the bitboard engines it is
+ * checked against. Given a {@link BoardEngine}, such as the
+ * {@link BitBoardEngine} that production games use, it plays the game on
+ * that instead, on the engine's board size.</p>
+ */
+public class GameEngine implements ConnectFourEngine {
+    private final Game game;
+
+    public GameEngine() {
+        this(new ArrayBoardEngine(BoardSize.STANDARD));
+    }
+
+    GameEngine(BoardEngine board) {
+        this.game = new Game("Player1", "Player2", Checker.RED, board);
+    }
+
+    @Override
+    public void reset() {
+        game.reset("Player1", "Player2", Checker.RED);
+    }
+
+    @Override
+    public boolean play(int column) {
+        return game.takeTurn(column);
+    }
+
+    @Override
+    public int winner() {
+        String winner = game.getWinner();
+        if (winner == null) {
+            return EMPTY;
+        }
+        if (winner.equals(game.getPlayer1Checker().toString())) {
+            return FIRST;
+        }
+        if (winner.equals(game.getPlayer1Checker().opponent().toString())) {
+            return SECOND;
+        }
+        return DRAW;
+    }
+
+    @Override
+    public int cell(int row, int column) {
+        Checker checker = game.getCheckerAt(row, column);
+        if (checker == null) {
+            return EMPTY;
+        }
+        return checker == game.getPlayer1Checker() ? FIRST : SECOND;
+    }
+}
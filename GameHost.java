@@ -0,0 +1,1114 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hosts many concurrent Connect 4 games, addressed by numeric id.
+ *
+ * <p>Each game lives in a pooled slot that keeps its {@link ConnectFourImpl},
+ * and so its {@link Game} and {@link Board}, after the game is released.
+ * Starting a game reuses a free slot and resets its game in place, so once the
+ * host has grown to its working size, starting, resetting and releasing games
+ * allocates no game objects. Ids stay the same when a game is spilled and
+ * revived, restored or moved between hosts, so they are mapped to slots
+ * through a {@link LongTable}, which neither boxes ids nor allocates per
+ * game.</p>
+ *
+ * <p>Memory can be bounded with two optional eviction policies:</p>
+ * <ul>
+ *  <li>An idle timeout. Each game has an idle timer in a {@link TimingWheel};
+ *  using a game only records the access time, and an expiring timer re-arms
+ *  itself if the game was used since it was set.</li>
+ *  <li>A maximum number of games. Starting a game when the host is full
+ *  evicts a game that has not been used recently, chosen with the CLOCK
+ *  algorithm.</li>
+ * </ul>
+ * <p>Evicted games are dropped, or, with a spill directory, written to disk
+ * in compact form and revived transparently by the next call for their id.
+ * A game whose spill fails stays in memory, and eviction moves on to another
+ * game.</p>
+ *
+ * <p>Games can be started with a {@link TimeControl}. A player who runs out
+ * of time loses even if nobody calls the host again: the same timing wheel
+ * thread flags losses on time for every game. Each slot has a single intrusive
+ * timer, set for the earlier of its idle and clock deadlines, so clocks need
+ * no thread or timer object per game.</p>
+ *
+ * <p>With a data directory, the host survives restarts. Every change to a
+ * game is appended to a {@link GameJournal}, and checkpoints periodically
+ * write every game in memory to a {@link GameSnapshot}. A checkpoint copies
+ * each game under that game's lock only, so play continues while it runs.
+ * On startup the host loads the latest snapshot and replays only the journal
+ * written since it began. Games spilled to disk are not in snapshots, so the
+ * spill directory must be kept alongside the data directory. Clocks do not
+ * run while the host is down.</p>
+ *
+ * <p>Games that finish, by a win, a draw, a loss on time or
+ * {@link #endGame(long)}, can be recorded in a {@link GameArchive} set with
+ * {@link #setArchive(GameArchive)}.</p>
+ *
+ * <p>All methods are thread safe. Calls for the same game are serialized;
+ * calls for different games do not contend. Concurrent
+ * {@link #getGameState(long)} calls for the same game share one
+ * serialization: a call that finds one in progress waits for it and
+ * returns the same string.</p>
+ */
+public class GameHost {
+    private static final String NO_GAME = "{\"error\": \"No game\"}";
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 1024;
+    private static final long JOURNAL_FLUSH_MILLIS = 200;
+    private static final String SNAPSHOT_FILE = "games.snapshot";
+    private static final int LEGAL_MOVES = 0;
+    private static final int WINNING_MOVES = 1;
+    private static final int BLOCKING_MOVES = 2;
+
+    /**
+     * The lowest game id a caller may choose with
+     * {@code startGame(long, ...)}. Ids the host chooses itself stay below
+     * it, so the two never meet.
+     */
+    public static final long FIRST_CALLER_ID = 1L << 62;
+
+    private final long idleTimeoutMillis;
+    private final int maxGames;
+    private final SpillStore spillStore;
+    private final Path dataDirectory;
+    private final GameJournal journal;
+    private final long checkpointIntervalMillis;
+    private final Object checkpointLock = new Object();
+    private Thread journalThread;
+    private final TimingWheel wheel = new TimingWheel(TICK_MILLIS, WHEEL_SIZE);
+    private volatile boolean wheelStarted;
+    private volatile GameArchive archive;
+    private final LongTable<Slot> games = new LongTable<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    // Counted by every reader of a popular game, so striped to avoid contention
+    private final LongAdder stateReads = new LongAdder();
+    private final LongAdder coalescedStateReads = new LongAdder();
+    private static final AtomicReferenceFieldUpdater<Slot, Flight> FLIGHT =
+            AtomicReferenceFieldUpdater.newUpdater(Slot.class, Flight.class, "flight");
+    private final Object reviveLock = new Object();
+
+    // Pool state, guarded by lock
+    private final Object lock = new Object();
+    private Slot[] slots = new Slot[0];
+    private int[] free = new int[0];
+    private int freeCount;
+    private int active;
+    private int clockHand;
+
+    /**
+     * Creates a host that keeps every game until it is released.
+     */
+    public GameHost() {
+        this(0, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Creates a host that drops idle games and holds at most {@code maxGames}.
+     *
+     * @param idleTimeoutMillis idle time after which a game is evicted, or 0 for never
+     * @param maxGames the most games held in memory
+     */
+    public GameHost(long idleTimeoutMillis, int maxGames) {
+        this(idleTimeoutMillis, maxGames, null);
+    }
+
+    /**
+     * Creates a host that spills evicted games to a directory.
+     *
+     * @param idleTimeoutMillis idle time after which a game is evicted, or 0 for never
+     * @param maxGames the most games held in memory
+     * @param spillDirectory where evicted games are kept for revival, or null to drop them
+     */
+    public GameHost(long idleTimeoutMillis, int maxGames, Path spillDirectory) {
+        this(idleTimeoutMillis, maxGames, spillDirectory, null, 0);
+    }
+
+    /**
+     * Creates a host that journals its games to a data directory, restoring
+     * any games found there from its last snapshot and journal.
+     *
+     * @param idleTimeoutMillis idle time after which a game is evicted, or 0 for never
+     * @param maxGames the most games held in memory
+     * @param spillDirectory where evicted games are kept for revival, or null to drop them
+     * @param dataDirectory where the journal and snapshots are kept, or null for none
+     * @param checkpointIntervalMillis time between checkpoints, or 0 to only
+     *                                 checkpoint when {@link #checkpoint()} is called
+     * @throws UncheckedIOException if the data directory cannot be read
+     */
+    public GameHost(long idleTimeoutMillis, int maxGames, Path spillDirectory, Path dataDirectory,
+                    long checkpointIntervalMillis) {
+        if (maxGames < 1) {
+            throw new IllegalArgumentException("maxGames must be positive");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxGames = maxGames;
+        this.spillStore = spillDirectory != null ? new SpillStore(spillDirectory) : null;
+        this.dataDirectory = dataDirectory;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        if (dataDirectory != null) {
+            try {
+                this.journal = new GameJournal(dataDirectory, recover());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            startJournalThread();
+        } else {
+            this.journal = null;
+        }
+    }
+
+    /**
+     * Starts a new game in a pooled slot, evicting a game if the host is full.
+     *
+     * @param player1CheckerPreference "RED" or "BLACK", ignoring case; anything
+     *                                 else defaults to RED
+     * @return the id of the new game
+     * @throws IllegalArgumentException if player1 or player2 is null or >20 chars
+     * @throws IllegalStateException if the host is full and no game can be
+     *         evicted, such as when every spill fails
+     * @see ConnectFourJSON#startGame(String, String, String)
+     */
+    public long startGame(String player1, String player2, String player1CheckerPreference) {
+        return startGame(player1, player2, player1CheckerPreference, null);
+    }
+
+    /**
+     * Starts a new timed game. The player to move loses once their clock runs
+     * out, whether or not the game is being played.
+     *
+     * @param timeControl clocks for both players, or null for an untimed game
+     * @return the id of the new game
+     * @throws IllegalArgumentException if player1 or player2 is null or >20 chars
+     * @throws IllegalStateException if the host is full and no game can be evicted
+     * @see ConnectFourJSON#startGame(String, String, String, TimeControl)
+     */
+    public long startGame(String player1, String player2, String player1CheckerPreference, TimeControl timeControl) {
+        // A fresh host id is in use nowhere, in memory or spilled
+        long id = nextId.incrementAndGet();
+        Slot slot = prepare(player1, player2, player1CheckerPreference, timeControl);
+        synchronized (slot) {
+            activate(slot, id);
+            slot.api.logStart();
+        }
+        return id;
+    }
+
+    /**
+     * Starts a new game under an id chosen by the caller, such as a
+     * {@link ShardRouter} that picks ids to place games on nodes. Caller ids
+     * start at {@link #FIRST_CALLER_ID}, above every id the host chooses.
+     *
+     * @throws IllegalArgumentException if the id is below {@link #FIRST_CALLER_ID}
+     *         or in use, or if player1 or player2 is null or >20 chars
+     */
+    void startGame(long id, String player1, String player2, String player1CheckerPreference, TimeControl timeControl) {
+        if (id < FIRST_CALLER_ID) {
+            throw new IllegalArgumentException("Game id " + id + " is not available to callers");
+        }
+        if (games.get(id) != null || isSpilled(id)) {
+            throw new IllegalArgumentException("Game id " + id + " is not available");
+        }
+        Slot slot = prepare(player1, player2, player1CheckerPreference, timeControl);
+        synchronized (slot) {
+            // Claimed before the spill check: a game spilled meanwhile was
+            // written out before it left the table
+            if (games.putIfAbsent(id, slot) == null) {
+                if (!isSpilled(id)) {
+                    activate(slot, id);
+                    slot.api.logStart();
+                    return;
+                }
+                games.remove(id);
+            }
+        }
+        free(slot);
+        throw new IllegalArgumentException("Game id " + id + " is not available");
+    }
+
+    // Sets up a new game in a free slot, not yet published under an id
+    private Slot prepare(String player1, String player2, String player1CheckerPreference, TimeControl timeControl) {
+        Checker preference = "BLACK".equalsIgnoreCase(player1CheckerPreference) ? Checker.BLACK : Checker.RED;
+        Slot slot = allocate();
+        IllegalArgumentException failure;
+        synchronized (slot) {
+            try {
+                if (slot.api == null) {
+                    slot.api = new ConnectFourImpl();
+                }
+                slot.api.newGame(player1, player2, preference, timeControl);
+                return slot;
+            } catch (IllegalArgumentException e) {
+                failure = e;
+            }
+        }
+        free(slot);
+        throw failure;
+    }
+
+    // True if a game is spilled under the id; checks without reviving it
+    private boolean isSpilled(long id) {
+        if (spillStore == null) {
+            return false;
+        }
+        try {
+            return spillStore.contains(id);
+        } catch (IOException e) {
+            EventLog.shared().error("spill-read-failed", id, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * @see ConnectFourJSON#getGameState()
+     */
+    public String getGameState(long id) {
+        stateReads.increment();
+        while (true) {
+            Slot slot = find(id);
+            if (slot == null) {
+                return NO_GAME;
+            }
+            // A serialization in progress holds the slot lock, so the game
+            // cannot change before it finishes
+            Flight flight = slot.flight;
+            if (flight != null && flight.id == id && !flight.done) {
+                String state = flight.await();
+                if (state != null) {
+                    slot.touch();
+                    coalescedStateReads.increment();
+                    return state;
+                }
+            }
+            String state = null;
+            synchronized (slot) {
+                if (slot.id != id) {
+                    continue;
+                }
+                slot.touch();
+                long version = slot.api.getVersion();
+                flight = slot.flight;
+                if (flight != null && flight.id == id && flight.done && flight.state != null
+                        && flight.version == version && slot.api.getGame().getTimeControl() == null) {
+                    // Finished while this call waited for the lock, and nothing has changed
+                    // since; timed games are left out as their clocks have moved on
+                    coalescedStateReads.increment();
+                    return flight.state;
+                }
+                flight = new Flight(id);
+                slot.flight = flight;
+                try {
+                    state = slot.api.getGameState();
+                    changed(slot, version);
+                } finally {
+                    flight.complete(state, slot.api.getVersion());
+                }
+            }
+            // Drop the result unless a newer serialization has replaced it
+            FLIGHT.compareAndSet(slot, flight, null);
+            return state;
+        }
+    }
+
+    /**
+     * @see ConnectFourJSON#takeTurn(int)
+     */
+    public String takeTurn(long id, int column) {
+        while (true) {
+            Slot slot = find(id);
+            if (slot == null) {
+                return NO_GAME;
+            }
+            synchronized (slot) {
+                if (slot.id == id) {
+                    slot.touch();
+                    long version = slot.api.getVersion();
+                    String state = slot.api.takeTurn(column);
+                    changed(slot, version);
+                    return state;
+                }
+            }
+        }
+    }
+
+    /**
+     * @see ConnectFourJSON#playMoves(String)
+     */
+    public String playMoves(long id, String moves) {
+        while (true) {
+            Slot slot = find(id);
+            if (slot == null) {
+                return NO_GAME;
+            }
+            synchronized (slot) {
+                if (slot.id == id) {
+                    slot.touch();
+                    long version = slot.api.getVersion();
+                    String state = slot.api.playMoves(moves);
+                    changed(slot, version);
+                    return state;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the moves of a game in move notation, or null if there is no such game.
+     *
+     * @see ConnectFourJSON#getMoveString()
+     */
+    public String getMoveString(long id) {
+        while (true) {
+            Slot slot = find(id);
+            if (slot == null) {
+                return null;
+            }
+            synchronized (slot) {
+                if (slot.id == id) {
+                    slot.touch();
+                    return slot.api.getMoveString();
+                }
+            }
+        }
+    }
+
+    /**
+     * @see ConnectFourJSON#getLegalMoves()
+     */
+    public int getLegalMoves(long id) {
+        return moveMask(id, LEGAL_MOVES);
+    }
+
+    /**
+     * @see ConnectFourJSON#getWinningMoves()
+     */
+    public int getWinningMoves(long id) {
+        return moveMask(id, WINNING_MOVES);
+    }
+
+    /**
+     * @see ConnectFourJSON#getBlockingMoves()
+     */
+    public int getBlockingMoves(long id) {
+        return moveMask(id, BLOCKING_MOVES);
+    }
+
+    private int moveMask(long id, int kind) {
+        while (true) {
+            Slot slot = find(id);
+            if (slot == null) {
+                return 0;
+            }
+            synchronized (slot) {
+                if (slot.id == id) {
+                    slot.touch();
+                    if (kind == LEGAL_MOVES) {
+                        return slot.api.getLegalMoves();
+                    }
+                    return kind == WINNING_MOVES ? slot.api.getWinningMoves() : slot.api.getBlockingMoves();
+                }
+            }
+        }
+    }
+
+    /**
+     * Resets a game in place, keeping its id.
+     *
+     * @see ConnectFourJSON#resetGame()
+     */
+    public String resetGame(long id) {
+        while (true) {
+            Slot slot = find(id);
+            if (slot == null) {
+                return NO_GAME;
+            }
+            synchronized (slot) {
+                if (slot.id == id) {
+                    slot.touch();
+                    long version = slot.api.getVersion();
+                    String state = slot.api.resetGame();
+                    changed(slot, version);
+                    return state;
+                }
+            }
+        }
+    }
+
+    /**
+     * @see ConnectFourJSON#endGame()
+     */
+    public String endGame(long id) {
+        while (true) {
+            Slot slot = find(id);
+            if (slot == null) {
+                return NO_GAME;
+            }
+            synchronized (slot) {
+                if (slot.id == id) {
+                    slot.touch();
+                    long version = slot.api.getVersion();
+                    String state = slot.api.endGame();
+                    changed(slot, version);
+                    return state;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a game, in memory or spilled, and returns its slot to the pool.
+     * Later calls with its id return {@code {"error": "No game"}}.
+     *
+     * @return true if the game existed
+     */
+    public boolean releaseGame(long id) {
+        Slot slot = games.get(id);
+        boolean armed = false;
+        if (slot != null) {
+            synchronized (slot) {
+                if (slot.id == id) {
+                    games.remove(id);
+                    slot.id = 0;
+                    armed = slot.disarm();
+                    if (journal != null) {
+                        journal.appendRemove(id);
+                    }
+                } else {
+                    slot = null;
+                }
+            }
+        }
+        if (slot != null) {
+            if (armed) {
+                wheel.cancel(slot);
+            }
+            free(slot);
+            EventLog.shared().info("game-released", id, null);
+            return true;
+        }
+        if (spillStore != null) {
+            synchronized (reviveLock) {
+                try {
+                    boolean spilled = spillStore.read(id) != null;
+                    spillStore.delete(id);
+                    if (spilled && journal != null) {
+                        journal.appendRemove(id);
+                    }
+                    return spilled;
+                } catch (IOException e) {
+                    EventLog.shared().error("spill-delete-failed", id, e.getMessage());
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a game's compact state, in memory or spilled, without removing
+     * it, for copying it to another host with {@link #importGame(long, byte[])}.
+     *
+     * @return the game's state, or null if there is no such game
+     */
+    public byte[] copyGame(long id) {
+        while (true) {
+            Slot slot = find(id);
+            if (slot == null) {
+                return null;
+            }
+            synchronized (slot) {
+                if (slot.id != id) {
+                    continue;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(Game.MAX_COMPACT_BYTES);
+                slot.api.writeState(buffer);
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }
+        }
+    }
+
+    /**
+     * Removes a game, in memory or spilled, and returns its compact state, for
+     * moving it to another host with {@link #importGame(long, byte[])}.
+     *
+     * @return the game's state, or null if there is no such game
+     */
+    public byte[] exportGame(long id) {
+        while (true) {
+            Slot slot = find(id);
+            if (slot == null) {
+                return null;
+            }
+            byte[] state;
+            boolean armed;
+            synchronized (slot) {
+                if (slot.id != id) {
+                    continue;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(Game.MAX_COMPACT_BYTES);
+                slot.api.writeState(buffer);
+                state = Arrays.copyOf(buffer.array(), buffer.position());
+                games.remove(id);
+                slot.id = 0;
+                armed = slot.disarm();
+                if (journal != null) {
+                    journal.appendRemove(id);
+                }
+            }
+            if (armed) {
+                wheel.cancel(slot);
+            }
+            free(slot);
+            return state;
+        }
+    }
+
+    /**
+     * Adds a game exported from another host under the same id. A game already
+     * held under the id is replaced only if the imported state is newer.
+     */
+    public void importGame(long id, byte[] state) {
+        restore(id, ByteBuffer.wrap(state));
+    }
+
+    /**
+     * Returns the ids of every game, in memory or spilled.
+     */
+    public long[] getGameIds() {
+        long[] inMemory = games.keys();
+        if (spillStore == null) {
+            return inMemory;
+        }
+        try {
+            long[] spilled = spillStore.ids();
+            long[] all = Arrays.copyOf(inMemory, inMemory.length + spilled.length);
+            System.arraycopy(spilled, 0, all, inMemory.length, spilled.length);
+            return all;
+        } catch (IOException e) {
+            EventLog.shared().error("spill-list-failed", EventLog.NO_GAME, e.getMessage());
+            return inMemory;
+        }
+    }
+
+    /**
+     * Returns the number of games currently held in memory.
+     */
+    public int size() {
+        synchronized (lock) {
+            return active;
+        }
+    }
+
+    /**
+     * Returns the number of games evicted so far, for idleness or capacity.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of games lost on time so far, whether flagged by the
+     * timer thread or by a call that found the clock expired.
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * Returns the number of {@link #getGameState(long)} calls so far.
+     */
+    public long getStateReadCount() {
+        return stateReads.sum();
+    }
+
+    /**
+     * Returns the number of {@link #getGameState(long)} calls so far that
+     * shared another call's serialization instead of making their own.
+     */
+    public long getCoalescedStateReadCount() {
+        return coalescedStateReads.sum();
+    }
+
+    /**
+     * Returns the fraction of {@link #getGameState(long)} calls that shared
+     * another call's serialization, or 0 before the first call.
+     */
+    public double getStateCoalesceRatio() {
+        long reads = stateReads.sum();
+        return reads == 0 ? 0 : (double) coalescedStateReads.sum() / reads;
+    }
+
+    /**
+     * Records every game that finishes from now on in an archive, or stops
+     * archiving if null. The caller keeps ownership and closes the archive
+     * once it is no longer set.
+     */
+    public void setArchive(GameArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Writes every game in memory to a new snapshot, then deletes the journal
+     * segments the snapshot makes redundant. Games keep being played while the
+     * snapshot is written.
+     *
+     * @throws IllegalStateException if the host has no data directory
+     */
+    public void checkpoint() throws IOException {
+        if (journal == null) {
+            throw new IllegalStateException("No data directory");
+        }
+        synchronized (checkpointLock) {
+            long journalSeq = journal.roll();
+            Slot[] current;
+            synchronized (lock) {
+                current = slots;
+            }
+            try (GameSnapshot.Writer writer = new GameSnapshot.Writer(dataDirectory.resolve(SNAPSHOT_FILE), journalSeq)) {
+                for (Slot slot : current) {
+                    writer.reserve();
+                    synchronized (slot) {
+                        if (slot.id != 0) {
+                            writer.add(slot.id, slot.api);
+                        }
+                    }
+                }
+                writer.commit(nextId.get() + 1);
+            }
+            journal.deleteBefore(journalSeq);
+        }
+    }
+
+    /**
+     * Stops the threads used for idle timeouts, clocks and checkpoints, and
+     * flushes the journal. Games already held are kept, but idle games are no
+     * longer evicted and unattended clocks are only flagged when their game is
+     * next used.
+     */
+    public void shutdown() {
+        wheel.stop();
+        if (journal != null) {
+            synchronized (checkpointLock) {
+                if (journalThread != null) {
+                    journalThread.interrupt();
+                    journalThread = null;
+                }
+            }
+            journal.flush();
+        }
+    }
+
+    // Flushes the journal often and checkpoints at the configured interval
+    private void startJournalThread() {
+        journalThread = new Thread(() -> {
+            long lastCheckpoint = System.nanoTime();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(JOURNAL_FLUSH_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                journal.flush();
+                long now = System.nanoTime();
+                if (checkpointIntervalMillis > 0 && now - lastCheckpoint >= checkpointIntervalMillis * 1_000_000) {
+                    try {
+                        checkpoint();
+                    } catch (IOException e) {
+                        EventLog.shared().error("checkpoint-failed", EventLog.NO_GAME, e.getMessage());
+                    }
+                    lastCheckpoint = System.nanoTime();
+                }
+            }
+        }, "game-journal");
+        journalThread.setDaemon(true);
+        journalThread.start();
+    }
+
+    // Loads the snapshot and replays the journal written since; returns the
+    // sequence number for the next journal record
+    private long recover() throws IOException {
+        GameSnapshot snapshot = GameSnapshot.read(dataDirectory.resolve(SNAPSHOT_FILE), this::restore);
+        long journalSeq = 0;
+        if (snapshot != null) {
+            journalSeq = snapshot.getJournalSeq();
+            reserveId(snapshot.getNextId() - 1);
+        }
+        return GameJournal.replay(dataDirectory, journalSeq, new GameJournal.Replayer() {
+            @Override
+            public void state(long id, ByteBuffer state) {
+                restore(id, state);
+            }
+
+            @Override
+            public void remove(long id) {
+                Slot slot = games.remove(id);
+                if (slot != null) {
+                    synchronized (slot) {
+                        slot.id = 0;
+                        if (slot.disarm()) {
+                            wheel.cancel(slot);
+                        }
+                    }
+                    free(slot);
+                }
+            }
+        });
+    }
+
+    // Puts a game's state in memory unless a newer version is already there
+    private void restore(long id, ByteBuffer state) {
+        reserveId(id);
+        Slot slot = games.get(id);
+        if (slot != null) {
+            synchronized (slot) {
+                if (Game.versionOf(state) > slot.api.getVersion()) {
+                    slot.api.readState(state);
+                    slot.flagged = slot.api.isLostOnTime();
+                    slot.archived = slot.api.getGame().isGameOver();
+                    slot.deadlineNanos = Long.MAX_VALUE;
+                    arm(slot);
+                }
+            }
+            return;
+        }
+        slot = allocate();
+        synchronized (slot) {
+            if (slot.api == null) {
+                slot.api = new ConnectFourImpl();
+            }
+            slot.api.readState(state);
+            activate(slot, id);
+        }
+    }
+
+    // Keeps the ids the host chooses above a restored one; caller ids are
+    // left out so they cannot push host ids into their range
+    private void reserveId(long id) {
+        if (id < FIRST_CALLER_ID) {
+            nextId.accumulateAndGet(id, Math::max);
+        }
+    }
+
+    private Slot find(long id) {
+        Slot slot = games.get(id);
+        if (slot != null || spillStore == null) {
+            return slot;
+        }
+        return revive(id);
+    }
+
+    // Loads a spilled game back into a slot under its old id
+    private Slot revive(long id) {
+        synchronized (reviveLock) {
+            Slot existing = games.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            byte[] state;
+            try {
+                state = spillStore.read(id);
+            } catch (IOException e) {
+                EventLog.shared().error("spill-read-failed", id, e.getMessage());
+                return null;
+            }
+            if (state == null) {
+                return null;
+            }
+
+            Slot slot = allocate();
+            synchronized (slot) {
+                if (slot.api == null) {
+                    slot.api = new ConnectFourImpl();
+                }
+                slot.api.readState(ByteBuffer.wrap(state));
+                activate(slot, id);
+            }
+            try {
+                spillStore.delete(id);
+            } catch (IOException e) {
+                EventLog.shared().error("spill-delete-failed", id, e.getMessage());
+            }
+            return slot;
+        }
+    }
+
+    // Publishes a prepared slot under an id; called with the slot locked
+    private void activate(Slot slot, long id) {
+        slot.id = id;
+        slot.api.setEventId(id);
+        slot.touch();
+        slot.flagged = slot.api.isLostOnTime();
+        slot.archived = slot.api.getGame().isGameOver();
+        games.put(id, slot);
+        arm(slot);
+        if (journal != null) {
+            journal.appendState(id, slot.api);
+        }
+    }
+
+    // Records a change a call made to a game: counts and archives its result,
+    // re-arms its timer for the new clock and journals it. Called with the
+    // slot locked.
+    private void changed(Slot slot, long versionBefore) {
+        if (slot.api.getVersion() != versionBefore) {
+            recordResult(slot);
+            arm(slot);
+            if (journal != null) {
+                journal.appendState(slot.id, slot.api);
+            }
+        }
+    }
+
+    // Counts each loss on time and archives each finished game once, however
+    // the game ended; called with the slot locked
+    private void recordResult(Slot slot) {
+        boolean lost = slot.api.isLostOnTime();
+        if (lost && !slot.flagged) {
+            timeouts.incrementAndGet();
+        }
+        slot.flagged = lost;
+
+        boolean over = slot.api.getGame().isGameOver();
+        GameArchive target = archive;
+        if (over && !slot.archived && target != null) {
+            target.append(slot.api.getGame());
+        }
+        slot.archived = over;
+    }
+
+    // Sets the slot's timer for its next idle or clock deadline unless it is
+    // already set to go off sooner; a timer that goes off early re-arms
+    // itself. Called with the slot locked.
+    private void arm(Slot slot) {
+        long delayMillis = slot.api.getMillisUntilTimeout();
+        if (idleTimeoutMillis > 0) {
+            long idleMillis = (System.nanoTime() - slot.lastAccessNanos) / 1_000_000;
+            delayMillis = Math.min(delayMillis, Math.max(0, idleTimeoutMillis - idleMillis));
+        }
+        if (delayMillis == Long.MAX_VALUE) {
+            return;
+        }
+        long deadlineNanos = System.nanoTime() + delayMillis * 1_000_000;
+        if (deadlineNanos < slot.deadlineNanos) {
+            if (!wheelStarted) {
+                wheel.start();
+                wheelStarted = true;
+            }
+            slot.deadlineNanos = deadlineNanos;
+            wheel.schedule(slot, delayMillis);
+        }
+    }
+
+    // Takes a free slot, growing the pool or evicting a game if there is none.
+    // Evictions, and so spill writes, happen outside the pool lock.
+    private Slot allocate() {
+        int attempts = 0;
+        while (true) {
+            Slot victim;
+            synchronized (lock) {
+                if (freeCount == 0 && slots.length < maxGames) {
+                    grow();
+                }
+                if (freeCount > 0) {
+                    active++;
+                    return slots[free[--freeCount]];
+                }
+                victim = attempts < 2 * slots.length ? nextVictim() : null;
+            }
+            if (victim == null) {
+                throw new IllegalStateException("Host is full: no game could be evicted");
+            }
+            if (evict(victim)) {
+                free(victim);
+            } else {
+                attempts++;
+            }
+        }
+    }
+
+    private void free(Slot slot) {
+        synchronized (lock) {
+            free[freeCount++] = slot.index;
+            active--;
+        }
+    }
+
+    // CLOCK: skip and clear recently used slots until one was not used since
+    // the last sweep, giving up after two sweeps; called with lock held
+    private Slot nextVictim() {
+        for (int i = 0; i < 2 * slots.length; i++) {
+            Slot slot = slots[clockHand];
+            clockHand = (clockHand + 1) % slots.length;
+            if (slot.referenced) {
+                slot.referenced = false;
+            } else {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    // Evicts a game chosen by CLOCK unless it was used since it was chosen
+    private boolean evict(Slot slot) {
+        boolean armed;
+        synchronized (slot) {
+            if (slot.id == 0 || slot.referenced || !evictLocked(slot)) {
+                return false;
+            }
+            armed = slot.disarm();
+        }
+        if (armed) {
+            wheel.cancel(slot);
+        }
+        return true;
+    }
+
+    // Removes a slot's game, spilling it first if configured. If the spill
+    // fails the game stays, counted as used so it is not retried at once.
+    // Called with the slot locked.
+    private boolean evictLocked(Slot slot) {
+        if (spillStore != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(Game.MAX_COMPACT_BYTES);
+            try {
+                slot.api.writeState(buffer);
+                spillStore.write(slot.id, Arrays.copyOf(buffer.array(), buffer.position()));
+            } catch (IOException e) {
+                EventLog.shared().error("spill-failed", slot.id, "keeping the game in memory: " + e.getMessage());
+                slot.touch();
+                arm(slot);
+                return false;
+            }
+        }
+        EventLog.shared().info(spillStore != null ? "game-spilled" : "game-evicted", slot.id, null);
+        games.remove(slot.id);
+        if (journal != null) {
+            journal.appendRemove(slot.id);
+        }
+        slot.id = 0;
+        evictions.incrementAndGet();
+        return true;
+    }
+
+    // Flags a loss on time if the clock has run out, then either evicts an
+    // idle game or re-arms the timer for the next deadline
+    private void onTimer(Slot slot) {
+        synchronized (slot) {
+            if (slot.id == 0) {
+                return;
+            }
+            slot.deadlineNanos = Long.MAX_VALUE;
+            if (slot.api.checkTimeout()) {
+                recordResult(slot);
+                if (journal != null) {
+                    journal.appendState(slot.id, slot.api);
+                }
+            }
+            long idleMillis = (System.nanoTime() - slot.lastAccessNanos) / 1_000_000;
+            if (idleTimeoutMillis <= 0 || idleMillis < idleTimeoutMillis) {
+                arm(slot);
+                return;
+            }
+            // Evicted under the lock that saw it idle, so a call cannot slip in between
+            if (!evictLocked(slot)) {
+                return;
+            }
+        }
+        free(slot);
+    }
+
+    // Doubles the slot count up to maxGames; called with lock held
+    private void grow() {
+        int size = (int) Math.min(maxGames, Math.max(16L, slots.length * 2L));
+        Slot[] grown = Arrays.copyOf(slots, size);
+        int[] grownFree = Arrays.copyOf(free, size);
+        // Hand out low indexes first
+        for (int i = size - 1; i >= slots.length; i--) {
+            grown[i] = new Slot(i);
+            grownFree[freeCount++] = i;
+        }
+        free = grownFree;
+        slots = grown;
+    }
+
+    // One serialization of a game's state, shared by the calls that overlap it
+    private static final class Flight {
+        final long id;
+        // Written before done is set, read after it is seen
+        long version;
+        String state;
+        volatile boolean done;
+
+        Flight(long id) {
+            this.id = id;
+        }
+
+        // state is null if the serialization failed
+        synchronized void complete(String state, long version) {
+            this.state = state;
+            this.version = version;
+            this.done = true;
+            notifyAll();
+        }
+
+        synchronized String await() {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return state;
+        }
+    }
+
+    private final class Slot extends TimingWheel.Timer {
+        final int index;
+        // Id of the hosted game, or 0 while the slot is free; guarded by this
+        long id;
+        ConnectFourImpl api;
+        volatile long lastAccessNanos;
+        volatile boolean referenced;
+        // When the timer is set to go off, or Long.MAX_VALUE if it is not set;
+        // guarded by this, like whether the game's time loss has been counted
+        long deadlineNanos = Long.MAX_VALUE;
+        boolean flagged;
+        // Whether the game was over when last seen, so it is archived once
+        boolean archived;
+        // The latest getGameState serialization, until its caller clears it
+        volatile Flight flight;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        void touch() {
+            lastAccessNanos = System.nanoTime();
+            referenced = true;
+        }
+
+        // Forgets the timer deadline, returning true if the timer may still be in the wheel
+        boolean disarm() {
+            boolean armed = deadlineNanos != Long.MAX_VALUE;
+            deadlineNanos = Long.MAX_VALUE;
+            return armed;
+        }
+
+        @Override
+        protected void onExpire() {
+            onTimer(this);
+        }
+    }
+}
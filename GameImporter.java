@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams newline-delimited game files in {@link MoveNotation} into a sink,
+ * such as a {@link GameArchive}.
+ *
+ * <p>Each line holds one game's move string. Anything after the first space
+ * or tab, such as a score column, is ignored, as are blank lines and
+ * carriage returns. Each game is replayed on one reused {@link Position} to
+ * check every move is legal and to find the result; a line with a bad digit,
+ * an illegal move or a move after the game was won is rejected and
+ * counted.</p>
+ *
+ * <p>Input is read through a single direct buffer and parsed a byte at a
+ * time, so importing allocates nothing per game.</p>
+ */
+public class GameImporter {
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int CELLS = BitBoard.ROWS * BitBoard.COLUMNS;
+
+    /**
+     * Receives imported games. The moves array is reused for the next game.
+     */
+    public interface Sink {
+        /**
+         * @param moves 0-based columns played, in order
+         * @param length number of moves
+         * @param winner a {@link ConnectFourEngine} winner, {@code EMPTY} if the game was not finished
+         */
+        void accept(int[] moves, int length, int winner);
+    }
+
+    private final Sink sink;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final Position empty = new Position();
+    private final Position position = new Position();
+    private final int[] moves = new int[CELLS];
+
+    // State of the line being parsed, which can span buffer refills
+    private int length;
+    private int winner;
+    private boolean rejected;
+    private boolean skipping;
+
+    private long lines;
+    private long imported;
+    private long rejectedGames;
+    private long firstRejectedLine;
+
+    public GameImporter(Sink sink) {
+        this.sink = sink;
+        startLine();
+    }
+
+    /**
+     * Imports every game in a file.
+     */
+    public void importFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            importFrom(channel);
+        }
+    }
+
+    /**
+     * Imports every game from a channel, up to its end. Line numbers start
+     * again from 1 for each channel; the imported and rejected counts are
+     * totals over every import.
+     */
+    public void importFrom(ReadableByteChannel channel) throws IOException {
+        // Nothing carries over from a previous file, even one that failed mid-line
+        startLine();
+        lines = 0;
+        firstRejectedLine = 0;
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                accept(buffer.get());
+            }
+            buffer.clear();
+        }
+        if (length > 0 || rejected) {
+            endLine();
+        }
+    }
+
+    private void accept(byte b) {
+        if (b == '\n') {
+            endLine();
+        } else if (skipping || rejected || b == '\r') {
+            return;
+        } else if (b == ' ' || b == '\t') {
+            skipping = true;
+        } else {
+            play(MoveNotation.columnOf(b));
+        }
+    }
+
+    private void play(int column) {
+        if (column < 0 || winner != ConnectFourEngine.EMPTY || !position.canPlay(column)) {
+            rejected = true;
+            return;
+        }
+        if (position.isWinningMove(column)) {
+            winner = length % 2 == 0 ? ConnectFourEngine.FIRST : ConnectFourEngine.SECOND;
+        }
+        position.play(column);
+        moves[length++] = column;
+        if (length == CELLS && winner == ConnectFourEngine.EMPTY) {
+            winner = ConnectFourEngine.DRAW;
+        }
+    }
+
+    private void endLine() {
+        lines++;
+        if (rejected) {
+            rejectedGames++;
+            if (firstRejectedLine == 0) {
+                firstRejectedLine = lines;
+            }
+        } else if (length > 0) {
+            imported++;
+            sink.accept(moves, length, winner);
+        }
+        startLine();
+    }
+
+    private void startLine() {
+        position.set(empty);
+        length = 0;
+        winner = ConnectFourEngine.EMPTY;
+        rejected = false;
+        skipping = false;
+    }
+
+    /**
+     * Returns the number of lines read by the latest import.
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejectedGames;
+    }
+
+    /**
+     * Returns the 1-based line number of the first game rejected by the latest
+     * import, or 0 if none was rejected.
+     */
+    public long getFirstRejectedLine() {
+        return firstRejectedLine;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java GameImporter ARCHIVE_DIR FILE...");
+            return;
+        }
+        try (GameArchive archive = new GameArchive(Paths.get(args[0]))) {
+            GameImporter importer = new GameImporter(
+                    (moves, length, winner) -> archive.append(moves, length, winner, "imported", "imported"));
+            long begin = System.nanoTime();
+            for (int i = 1; i < args.length; i++) {
+                importer.importFile(Paths.get(args[i]));
+                if (importer.getFirstRejectedLine() > 0) {
+                    System.out.println("First rejected game in " + args[i] + " on line " + importer.getFirstRejectedLine());
+                }
+            }
+            archive.flush();
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("%d games imported, %d rejected in %.2f s (%.0f games/s)%n",
+                    importer.getImported(), importer.getRejected(), seconds, importer.getImported() / seconds);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only log of changes to hosted games, kept in a directory of segment
+ * files.
+ *
+ * <p>Each record carries a sequence number and the whole compact state of a
+ * game after a change, or marks the game as removed. Replaying a record
+ * therefore does not depend on the records before it, so a snapshot taken
+ * while games are still changing is made current by replaying every record
+ * from the sequence number at which the snapshot began.</p>
+ *
+ * <p>Records are buffered and reach the file when the buffer fills or on
+ * {@link #flush()}. {@link #roll()} starts a new segment, so segments wholly
+ * covered by a snapshot can be deleted.</p>
+ *
+ * <p>Appending only copies into a buffer. Writes and forces swap in a second,
+ * empty buffer and then do their I/O outside the lock that appends take, so
+ * appends for other games carry on meanwhile. Writers take turns, so records
+ * reach the file in sequence order.</p>
+ *
+ * <p>Record layout: length of the rest (int), sequence number (long), game id
+ * (long), kind (byte), then the game state for {@link #STATE} records.</p>
+ */
+public class GameJournal {
+    static final byte STATE = 1;
+    static final byte REMOVE = 2;
+
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 1;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    /**
+     * Receives replayed records.
+     */
+    public interface Replayer {
+        void state(long id, ByteBuffer state);
+
+        void remove(long id);
+    }
+
+    private final Path directory;
+    // Held while writing to a segment, taken before this
+    private final Object writeLock = new Object();
+    // Records not yet written, the empty buffer swapped in when they are,
+    // the segment and the sequence number; guarded by this
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private FileChannel channel;
+    private long nextSeq;
+
+    /**
+     * Opens a journal for appending.
+     *
+     * @param nextSeq sequence number of the next record, as returned by
+     *                {@link #replay(Path, long, Replayer)} for the same directory
+     * @throws UncheckedIOException if the directory cannot be written
+     */
+    public GameJournal(Path directory, long nextSeq) {
+        this.directory = directory;
+        this.nextSeq = nextSeq;
+        try {
+            Files.createDirectories(directory);
+            this.channel = openSegment(nextSeq);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends the current state of a game.
+     */
+    public void appendState(long id, ConnectFourImpl api) {
+        while (true) {
+            synchronized (this) {
+                if (buffer.remaining() >= HEADER_BYTES + Game.MAX_COMPACT_BYTES) {
+                    int start = buffer.position();
+                    buffer.position(start + 4);
+                    buffer.putLong(nextSeq++);
+                    buffer.putLong(id);
+                    buffer.put(STATE);
+                    api.writeState(buffer);
+                    buffer.putInt(start, buffer.position() - start - 4);
+                    return;
+                }
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Appends a record that a game no longer exists in memory.
+     */
+    public void appendRemove(long id) {
+        while (true) {
+            synchronized (this) {
+                if (buffer.remaining() >= HEADER_BYTES) {
+                    buffer.putInt(HEADER_BYTES - 4);
+                    buffer.putLong(nextSeq++);
+                    buffer.putLong(id);
+                    buffer.put(REMOVE);
+                    return;
+                }
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Writes buffered records to the current segment.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            ByteBuffer full;
+            FileChannel target;
+            synchronized (this) {
+                full = swapBuffers();
+                target = channel;
+            }
+            write(full, target);
+            returnBuffer(full);
+        }
+    }
+
+    /**
+     * Flushes, forces and closes the current segment and starts a new one.
+     *
+     * @return the sequence number of the first record in the new segment
+     */
+    public long roll() throws IOException {
+        synchronized (writeLock) {
+            long name;
+            synchronized (this) {
+                name = nextSeq;
+            }
+            // Records appended meanwhile go to the old segment, which is only
+            // deleted with segments before the returned sequence number
+            FileChannel next = openSegment(name);
+            ByteBuffer full;
+            FileChannel previous;
+            long firstSeq;
+            synchronized (this) {
+                full = swapBuffers();
+                previous = channel;
+                channel = next;
+                firstSeq = nextSeq;
+            }
+            write(full, previous);
+            returnBuffer(full);
+            previous.force(false);
+            previous.close();
+            return firstSeq;
+        }
+    }
+
+    /**
+     * Deletes every segment holding only records before {@code seq}.
+     */
+    public void deleteBefore(long seq) throws IOException {
+        synchronized (writeLock) {
+            List<Long> starts = segmentStarts(directory);
+            for (int i = 0; i + 1 < starts.size() && starts.get(i + 1) <= seq; i++) {
+                Files.deleteIfExists(segmentFile(directory, starts.get(i)));
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            flush();
+            FileChannel current;
+            synchronized (this) {
+                current = channel;
+            }
+            current.force(false);
+            current.close();
+        }
+    }
+
+    /**
+     * Replays the records of a journal directory in order, skipping those
+     * before {@code fromSeq}. A segment is read up to its first incomplete or
+     * malformed record, as left by a crash during a write.
+     *
+     * @param replayer receives the records
+     * @return the sequence number after the last record read, and at least {@code fromSeq}
+     */
+    public static long replay(Path directory, long fromSeq, Replayer replayer) throws IOException {
+        long next = fromSeq;
+        if (!Files.isDirectory(directory)) {
+            return next;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        for (long start : segmentStarts(directory)) {
+            try (FileChannel in = FileChannel.open(segmentFile(directory, start), StandardOpenOption.READ)) {
+                buffer.clear();
+                segment:
+                while (true) {
+                    boolean end = in.read(buffer) < 0;
+                    buffer.flip();
+                    while (buffer.remaining() >= 4) {
+                        int length = buffer.getInt(buffer.position());
+                        if (length < HEADER_BYTES - 4 || length > HEADER_BYTES - 4 + Game.MAX_COMPACT_BYTES) {
+                            break segment;
+                        }
+                        if (buffer.remaining() < 4 + length) {
+                            break;
+                        }
+                        int recordEnd = buffer.position() + 4 + length;
+                        buffer.getInt();
+                        long seq = buffer.getLong();
+                        long id = buffer.getLong();
+                        byte kind = buffer.get();
+                        if (seq >= fromSeq) {
+                            if (kind == STATE) {
+                                replayer.state(id, buffer.slice(buffer.position(), recordEnd - buffer.position()));
+                            } else if (kind == REMOVE) {
+                                replayer.remove(id);
+                            } else {
+                                break segment;
+                            }
+                        }
+                        next = Math.max(next, seq + 1);
+                        buffer.position(recordEnd);
+                    }
+                    if (end) {
+                        break;
+                    }
+                    buffer.compact();
+                }
+            }
+        }
+        return next;
+    }
+
+    // Swaps the spare buffer in for appends and returns the records to write;
+    // called with writeLock and this held, when the spare is always empty
+    private ByteBuffer swapBuffers() {
+        ByteBuffer full = buffer;
+        buffer = spare;
+        spare = null;
+        return full.flip();
+    }
+
+    // Puts a written buffer back as the spare; called with writeLock held
+    private synchronized void returnBuffer(ByteBuffer written) {
+        spare = written.clear();
+    }
+
+    private static void write(ByteBuffer records, FileChannel target) {
+        try {
+            while (records.hasRemaining()) {
+                target.write(records);
+            }
+        } catch (IOException e) {
+            EventLog.shared().error("journal-write-failed", EventLog.NO_GAME, e.getMessage());
+        }
+    }
+
+    private FileChannel openSegment(long firstSeq) throws IOException {
+        return FileChannel.open(segmentFile(directory, firstSeq),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static Path segmentFile(Path directory, long firstSeq) {
+        return directory.resolve(PREFIX + String.format("%019d", firstSeq) + SUFFIX);
+    }
+
+    private static List<Long> segmentStarts(Path directory) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                starts.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            }
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Snapshot file holding the compact state of every hosted game at a
+ * checkpoint, together with the {@link GameJournal} sequence number the
+ * checkpoint began at.
+ *
+ * <p>Layout: a 32-byte header (magic, format version, journal sequence
+ * number, next game id, entry count) followed by one entry per game: game id
+ * (long), state length (short) and state. A snapshot is written to a
+ * temporary file and renamed into place when complete, so a crash while
+ * checkpointing leaves the previous snapshot intact.</p>
+ */
+public final class GameSnapshot {
+    private static final int MAGIC = 0x43345353;
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    /**
+     * Receives the games of a snapshot being read.
+     */
+    public interface Loader {
+        void game(long id, ByteBuffer state);
+    }
+
+    private final long journalSeq;
+    private final long nextId;
+
+    private GameSnapshot(long journalSeq, long nextId) {
+        this.journalSeq = journalSeq;
+        this.nextId = nextId;
+    }
+
+    /**
+     * Returns the sequence number of the first journal record the snapshot
+     * may not include.
+     */
+    public long getJournalSeq() {
+        return journalSeq;
+    }
+
+    /**
+     * Returns a game id greater than that of every game in the snapshot.
+     */
+    public long getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Maps a snapshot file and passes each of its games to a loader.
+     *
+     * @return the snapshot's header, or null if the file does not exist
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static GameSnapshot read(Path file, Loader loader) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_BYTES));
+            if (size < HEADER_BYTES || map.getInt(0) != MAGIC || map.getInt(4) != FORMAT) {
+                throw new IOException("Not a game snapshot: " + file);
+            }
+            GameSnapshot snapshot = new GameSnapshot(map.getLong(8), map.getLong(16));
+            long count = map.getInt(24) & 0xFFFFFFFFL;
+
+            // Map in windows so snapshots over 2 GB can be read
+            long position = HEADER_BYTES;
+            for (long i = 0; i < count; ) {
+                long window = Math.min(size - position, Integer.MAX_VALUE);
+                map = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+                while (i < count && map.remaining() >= 10 && map.remaining() >= 10 + map.getShort(map.position() + 8)) {
+                    long id = map.getLong();
+                    int length = map.getShort();
+                    loader.game(id, map.slice(map.position(), length));
+                    map.position(map.position() + length);
+                    i++;
+                }
+                if (i < count && map.position() == 0) {
+                    throw new IOException("Truncated game snapshot: " + file);
+                }
+                position += map.position();
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Writes a snapshot through a reused buffer. Each game is copied into the
+     * buffer with {@link #add(long, ConnectFourImpl)}, which does no I/O, so
+     * callers can hold a game's lock for just that copy; the buffer is written
+     * out by {@link #reserve()}, called without locks before each game.
+     */
+    public static final class Writer implements Closeable {
+        private final Path file;
+        private final Path temp;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final long journalSeq;
+        private int count;
+
+        public Writer(Path file, long journalSeq) throws IOException {
+            this.file = file;
+            this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.journalSeq = journalSeq;
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.position(HEADER_BYTES);
+        }
+
+        /**
+         * Makes room in the buffer for one more game, writing it out if needed.
+         */
+        public void reserve() throws IOException {
+            if (buffer.remaining() < 10 + Game.MAX_COMPACT_BYTES) {
+                drain();
+            }
+        }
+
+        /**
+         * Copies a game's state into the buffer; must follow {@link #reserve()}.
+         */
+        public void add(long id, ConnectFourImpl api) {
+            int start = buffer.position();
+            buffer.putLong(id);
+            buffer.position(start + 10);
+            api.writeState(buffer);
+            buffer.putShort(start + 8, (short) (buffer.position() - start - 10));
+            count++;
+        }
+
+        /**
+         * Writes the header and moves the snapshot into place.
+         *
+         * @param nextId a game id greater than that of every game added
+         */
+        public void commit(long nextId) throws IOException {
+            drain();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT).putLong(journalSeq).putLong(nextId).putInt(count).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            channel.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Discards the snapshot unless it was committed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
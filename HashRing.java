@@ -0,0 +1,125 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring mapping game ids to named nodes.
+ *
+ * <p>Each node is placed on the ring at many points, its virtual nodes, and a
+ * game belongs to the node of the first point at or after the game's hash,
+ * wrapping around. With enough virtual nodes every node owns close to an
+ * equal share of games, and adding or removing a node only moves the games
+ * on the arcs it gains or loses, about {@code 1/n} of them.</p>
+ *
+ * <p>Rings are immutable: {@link #with(String)} and {@link #without(String)}
+ * return new rings, so a ring can be shared between threads and compared
+ * with its successor to find the games that move.</p>
+ */
+public final class HashRing {
+    /** Virtual nodes per node unless given. */
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    private final TreeMap<Long, String> points;
+    private final List<String> nodes;
+
+    /**
+     * Creates an empty ring.
+     */
+    public HashRing(int virtualNodes) {
+        this(virtualNodes, new TreeMap<>(), Collections.emptyList());
+    }
+
+    private HashRing(int virtualNodes, TreeMap<Long, String> points, List<String> nodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+        this.points = points;
+        this.nodes = Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * Returns a ring that also has a node.
+     *
+     * @throws IllegalArgumentException if the node is already on the ring
+     */
+    public HashRing with(String node) {
+        if (nodes.contains(node)) {
+            throw new IllegalArgumentException("Node " + node + " is already on the ring");
+        }
+        TreeMap<Long, String> grown = new TreeMap<>(points);
+        for (int i = 0; i < virtualNodes; i++) {
+            // A clash between two nodes' points is settled by name, so every ring agrees
+            grown.merge(pointOf(node, i), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+        }
+        List<String> names = new ArrayList<>(nodes);
+        names.add(node);
+        return new HashRing(virtualNodes, grown, names);
+    }
+
+    /**
+     * Returns a ring without a node.
+     *
+     * @throws IllegalArgumentException if the node is not on the ring
+     */
+    public HashRing without(String node) {
+        if (!nodes.contains(node)) {
+            throw new IllegalArgumentException("Node " + node + " is not on the ring");
+        }
+        HashRing ring = new HashRing(virtualNodes);
+        for (String other : nodes) {
+            if (!other.equals(node)) {
+                ring = ring.with(other);
+            }
+        }
+        return ring;
+    }
+
+    /**
+     * Returns the node that owns a game.
+     *
+     * @throws IllegalStateException if the ring is empty
+     */
+    public String nodeFor(long id) {
+        if (points.isEmpty()) {
+            throw new IllegalStateException("No nodes on the ring");
+        }
+        Map.Entry<Long, String> owner = points.ceilingEntry(hash(id));
+        return owner != null ? owner.getValue() : points.firstEntry().getValue();
+    }
+
+    /**
+     * Returns the nodes in the order they were added.
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    private static long pointOf(String node, int replica) {
+        // FNV-1a over the name and replica number, then mixed like the game ids
+        long h = 0xcbf29ce484222325L;
+        for (byte b : (node + "#" + replica).getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return hash(h);
+    }
+
+    // Murmur3 finalizer, so consecutive ids land far apart on the ring
+    static long hash(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
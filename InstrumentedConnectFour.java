@@ -0,0 +1,131 @@
+/**
+ * {@link ConnectFourJSON} that measures every call to another one for
+ * {@link Diagnostics}. Calls must finish on the thread that made them.
+ */
+final class InstrumentedConnectFour implements ConnectFourJSON {
+    private final ConnectFourJSON api;
+
+    InstrumentedConnectFour(ConnectFourJSON api) {
+        this.api = api;
+    }
+
+    @Override
+    public String startGame(String player1, String player2, String player1CheckerPreference) {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.startGame(player1, player2, player1CheckerPreference);
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.START_GAME);
+        }
+    }
+
+    @Override
+    public String startGame(String player1, String player2) {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.startGame(player1, player2);
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.START_GAME);
+        }
+    }
+
+    @Override
+    public String startGame(String player1, String player2, String player1CheckerPreference, TimeControl timeControl) {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.startGame(player1, player2, player1CheckerPreference, timeControl);
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.START_GAME);
+        }
+    }
+
+    @Override
+    public String resetGame() {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.resetGame();
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.RESET_GAME);
+        }
+    }
+
+    @Override
+    public String endGame() {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.endGame();
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.END_GAME);
+        }
+    }
+
+    @Override
+    public String takeTurn(int column) {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.takeTurn(column);
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.TAKE_TURN);
+        }
+    }
+
+    @Override
+    public String getGameState() {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.getGameState();
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.GET_GAME_STATE);
+        }
+    }
+
+    @Override
+    public int getLegalMoves() {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.getLegalMoves();
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.GET_LEGAL_MOVES);
+        }
+    }
+
+    @Override
+    public int getWinningMoves() {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.getWinningMoves();
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.GET_WINNING_MOVES);
+        }
+    }
+
+    @Override
+    public int getBlockingMoves() {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.getBlockingMoves();
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.GET_BLOCKING_MOVES);
+        }
+    }
+
+    @Override
+    public String getMoveString() {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.getMoveString();
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.GET_MOVE_STRING);
+        }
+    }
+
+    @Override
+    public String playMoves(String moves) {
+        ConnectFourCallEvent call = Diagnostics.begin();
+        try {
+            return api.playMoves(moves);
+        } finally {
+            Diagnostics.end(call, Diagnostics.Operation.PLAY_MOVES);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of latencies in nanoseconds, for percentile reports.
+ *
+ * <p>Buckets are log-linear: every power of two is split into 32 buckets, so
+ * a percentile is within about 3% of the true value at any scale, and the
+ * whole range of a {@code long} fits in under 2,000 counters. Recording is a
+ * single atomic increment.</p>
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency; negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Records a latency measured by a client that sends its next request a
+     * fixed interval after the previous one completes, correcting for
+     * coordinated omission: a response slower than the interval also held
+     * back the requests that would have been sent meanwhile, so those are
+     * recorded too, with the latencies they would have seen.
+     *
+     * @param expectedIntervalNanos the client's usual interval between requests; 0 to record only this value
+     */
+    public void recordCorrected(long nanos, long expectedIntervalNanos) {
+        record(nanos);
+        if (expectedIntervalNanos <= 0) {
+            return;
+        }
+        for (long missed = nanos - expectedIntervalNanos; missed >= expectedIntervalNanos; missed -= expectedIntervalNanos) {
+            record(missed);
+        }
+    }
+
+    /**
+     * Adds every value recorded in another histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        count.addAndGet(other.count.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the latency below which the given share of values fall, or 0 if
+     * nothing was recorded.
+     *
+     * @param percentile from 0 to 100
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Formats the usual percentiles in milliseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format("p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms",
+                getPercentile(50) / 1e6, getPercentile(90) / 1e6, getPercentile(99) / 1e6,
+                getPercentile(99.9) / 1e6, getMax() / 1e6);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long low = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return low + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
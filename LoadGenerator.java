@@ -0,0 +1,377 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test of the game API, for capacity planning.
+ *
+ * <p>Simulated players each start a game, then repeatedly think, poll the
+ * game state and play a move, playing both sides until the game is over,
+ * then end the game and start the next. Think times are log-normal around a
+ * median, like people's. The player count steps up in stages; each stage
+ * reports throughput and latency percentiles per operation, and the run
+ * reports the stage at which throughput stopped growing or 99th percentile
+ * latencies outgrew the think time.</p>
+ *
+ * <p>Latencies are measured from when a player meant to send a request, not
+ * from when its thread got to run, and responses slower than the think time
+ * also count the requests they held back
+ * ({@link LatencyHistogram#recordCorrected}). Without this, a saturated
+ * server makes its own clients wait and hides its worst latencies.</p>
+ *
+ * <p>Players run in-process against {@link ConnectFourJSON}, one
+ * {@link ConnectFourImpl} each, or against one shared {@link GameHost}.
+ * They run on virtual threads when the JVM has them, else on one platform
+ * thread each. In {@link Diagnostics} mode they always run on platform
+ * threads, as the JVM does not count what virtual threads allocate.</p>
+ *
+ * <pre>
+ * java LoadGenerator [json|host] [MAX_PLAYERS] [STAGE_SECONDS] [THINK_MILLIS]
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final String[] OPERATIONS = {"start", "state", "turn", "end"};
+    private static final int START = 0;
+    private static final int STATE = 1;
+    private static final int TURN = 2;
+    private static final int END = 3;
+    private static final int CELLS = BitBoard.ROWS * BitBoard.COLUMNS;
+
+    /**
+     * One player's connection to the API under test.
+     */
+    private interface Session {
+        String start();
+
+        String state();
+
+        String turn(int column);
+
+        void end();
+    }
+
+    /**
+     * Results of one stage.
+     */
+    public static final class Stage {
+        private final int players;
+        private final double seconds;
+        private final long games;
+        private final long errors;
+        private final LatencyHistogram[] latencies;
+        private final LatencyHistogram[] serviceTimes;
+
+        Stage(int players, double seconds, long games, long errors,
+                LatencyHistogram[] latencies, LatencyHistogram[] serviceTimes) {
+            this.players = players;
+            this.seconds = seconds;
+            this.games = games;
+            this.errors = errors;
+            this.latencies = latencies;
+            this.serviceTimes = serviceTimes;
+        }
+
+        public int getPlayers() {
+            return players;
+        }
+
+        /**
+         * Returns requests completed per second, over all operations.
+         */
+        public double getThroughput() {
+            long requests = 0;
+            for (LatencyHistogram histogram : serviceTimes) {
+                requests += histogram.getCount();
+            }
+            return requests / seconds;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Returns the corrected latencies of one operation: start, state, turn or end.
+         */
+        public LatencyHistogram getLatencies(String operation) {
+            return latencies[indexOf(operation)];
+        }
+
+        /**
+         * Returns the uncorrected times of one operation, from when the request
+         * was actually sent. The gap to {@link #getLatencies} is time requests
+         * spent waiting for a thread to send them.
+         */
+        public LatencyHistogram getServiceTimes(String operation) {
+            return serviceTimes[indexOf(operation)];
+        }
+
+        private static int indexOf(String operation) {
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                if (OPERATIONS[i].equals(operation)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private final boolean useHost;
+    private final long thinkNanos;
+    private final GameHost host;
+    private final AtomicInteger playerIds = new AtomicInteger();
+
+    // Counters of the stage in progress; replaced at each stage
+    private volatile LatencyHistogram[] latencies;
+    private volatile LatencyHistogram[] serviceTimes;
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean recording;
+    private volatile boolean stopped;
+
+    /**
+     * @param useHost true to drive a shared {@link GameHost}, false for one
+     *                {@link ConnectFourImpl} per player
+     * @param thinkMillis median think time before each move
+     */
+    public LoadGenerator(boolean useHost, long thinkMillis) {
+        this.useHost = useHost;
+        this.thinkNanos = thinkMillis * 1_000_000;
+        this.host = useHost ? new GameHost() : null;
+    }
+
+    /**
+     * Runs stages of 1, 2, 4... players up to {@code maxPlayers}, each for
+     * {@code stageSeconds} after the new players have started, printing
+     * each stage as it finishes.
+     */
+    public List<Stage> run(int maxPlayers, int stageSeconds) throws InterruptedException {
+        List<Stage> stages = new ArrayList<>();
+        ExecutorService executor = newPlayerExecutor();
+        int started = 0;
+        stopped = false;
+        try {
+            for (int players = 1; players <= maxPlayers; players = players < maxPlayers ? Math.min(maxPlayers, players * 2) : maxPlayers + 1) {
+                for (; started < players; started++) {
+                    executor.execute(this::play);
+                }
+                // Let the new players get past their first think time
+                Thread.sleep(Math.max(100, 3 * thinkNanos / 1_000_000));
+                Stage stage = measure(players, stageSeconds);
+                stages.add(stage);
+                print(stage);
+            }
+        } finally {
+            stopped = true;
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            if (host != null) {
+                host.shutdown();
+            }
+        }
+        printSaturation(stages);
+        return stages;
+    }
+
+    private Stage measure(int players, int stageSeconds) throws InterruptedException {
+        LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+        LatencyHistogram[] services = new LatencyHistogram[OPERATIONS.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            services[i] = new LatencyHistogram();
+        }
+        latencies = histograms;
+        serviceTimes = services;
+        games.set(0);
+        errors.set(0);
+        recording = true;
+        long begin = System.nanoTime();
+        Thread.sleep(stageSeconds * 1000L);
+        recording = false;
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        return new Stage(players, seconds, games.get(), errors.get(), histograms, services);
+    }
+
+    // One simulated player's loop, until the run stops
+    private void play() {
+        String name = "player-" + playerIds.incrementAndGet();
+        Session session = useHost ? hostSession(name) : jsonSession(name);
+        Position position = new Position();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long intended = System.nanoTime();
+        while (!stopped) {
+            intended = timed(START, intended, 0, () -> check(session.start()));
+            position.set(new Position());
+            while (!stopped && position.getMoves() < CELLS) {
+                intended = think(intended, random);
+                intended = timed(STATE, intended, thinkNanos, () -> check(session.state()));
+                int column = chooseColumn(position, random);
+                boolean wins = position.isWinningMove(column);
+                intended = timed(TURN, intended, 0, () -> check(session.turn(column)));
+                position.play(column);
+                if (wins) {
+                    break;
+                }
+            }
+            intended = timed(END, intended, 0, session::end);
+            if (recording) {
+                games.incrementAndGet();
+            }
+        }
+    }
+
+    // Sleeps until the end of a think time starting at the given instant and returns that end
+    private long think(long from, ThreadLocalRandom random) {
+        long until = from + (long) (thinkNanos * Math.exp(0.5 * random.nextGaussian()));
+        long wait = until - System.nanoTime();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+        }
+        return until;
+    }
+
+    // Runs one request meant to start at {@code intended} and returns when it completed
+    private long timed(int operation, long intended, long expectedIntervalNanos, Runnable request) {
+        long sent = System.nanoTime();
+        request.run();
+        long done = System.nanoTime();
+        if (recording) {
+            latencies[operation].recordCorrected(done - intended, expectedIntervalNanos);
+            serviceTimes[operation].record(done - sent);
+        }
+        return done;
+    }
+
+    private void check(String response) {
+        if (response == null || response.contains("\"error\"")) {
+            errors.incrementAndGet();
+        }
+    }
+
+    // A random move that does not lose at once, if there is one
+    private static int chooseColumn(Position position, ThreadLocalRandom random) {
+        int columns = BitBoard.columnsOf(position.nonLosingCells());
+        if (columns == 0) {
+            columns = position.legalColumns();
+        }
+        int pick = random.nextInt(Integer.bitCount(columns));
+        for (int i = 0; i < pick; i++) {
+            columns &= columns - 1;
+        }
+        return Integer.numberOfTrailingZeros(columns);
+    }
+
+    private static Session jsonSession(String name) {
+        ConnectFourJSON api = Diagnostics.wrap(new ConnectFourImpl());
+        return new Session() {
+            public String start() {
+                return api.startGame(name, "rival-" + name.substring(7), "RED");
+            }
+
+            public String state() {
+                return api.getGameState();
+            }
+
+            public String turn(int column) {
+                return api.takeTurn(column);
+            }
+
+            public void end() {
+                api.endGame();
+            }
+        };
+    }
+
+    private Session hostSession(String name) {
+        long[] id = {-1};
+        return new Session() {
+            public String start() {
+                id[0] = host.startGame(name, "rival-" + name.substring(7), "RED");
+                return id[0] >= 0 ? "" : null;
+            }
+
+            public String state() {
+                return host.getGameState(id[0]);
+            }
+
+            public String turn(int column) {
+                return host.takeTurn(id[0], column);
+            }
+
+            public void end() {
+                host.endGame(id[0]);
+                host.releaseGame(id[0]);
+            }
+        };
+    }
+
+    // Virtual threads need Java 21; look them up so this still runs on 17
+    private static ExecutorService newPlayerExecutor() {
+        if (!Diagnostics.isEnabled()) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Fall back to platform threads
+            }
+        }
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "load-player");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void print(Stage stage) {
+        System.out.printf("%6d players: %10.0f requests/s, %8d games, %d errors%n",
+                stage.getPlayers(), stage.getThroughput(), stage.getGames(), stage.getErrors());
+        for (String operation : OPERATIONS) {
+            LatencyHistogram histogram = stage.getLatencies(operation);
+            LatencyHistogram service = stage.getServiceTimes(operation);
+            if (histogram.getCount() > 0) {
+                System.out.printf("    %-5s %s (service p50 %.2f ms, p99 %.2f ms)%n", operation, histogram,
+                        service.getPercentile(50) / 1e6, service.getPercentile(99) / 1e6);
+            }
+        }
+    }
+
+    // Saturation: the first stage whose extra players raised throughput by under
+    // 10%, or made players wait longer for moves than they spend thinking
+    private void printSaturation(List<Stage> stages) {
+        for (int i = 1; i < stages.size(); i++) {
+            if (stages.get(i).getThroughput() < 1.1 * stages.get(i - 1).getThroughput()
+                    || stages.get(i).getLatencies("turn").getPercentile(99) > thinkNanos
+                    || stages.get(i).getLatencies("state").getPercentile(99) > thinkNanos) {
+                System.out.printf("Saturated at about %d players, %.0f requests/s%n",
+                        stages.get(i - 1).getPlayers(), stages.get(i - 1).getThroughput());
+                return;
+            }
+        }
+        System.out.println("Not saturated; try more players or a shorter think time");
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean useHost = args.length > 0 && args[0].equals("host");
+        if (args.length > 0 && !args[0].equals("host") && !args[0].equals("json")) {
+            System.out.println("Usage: java LoadGenerator [json|host] [MAX_PLAYERS] [STAGE_SECONDS] [THINK_MILLIS]");
+            return;
+        }
+        int maxPlayers = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        int stageSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long thinkMillis = args.length > 3 ? Long.parseLong(args[3]) : 100;
+        new LoadGenerator(useHost, thinkMillis).run(maxPlayers, stageSeconds);
+    }
+}
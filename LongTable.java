@@ -0,0 +1,222 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe map from positive {@code long} keys to values, for lookups on
+ * every call that must not box their key.
+ *
+ * <p>The table is split into independently locked shards of open-addressed
+ * parallel arrays, with linear probing and backward-shift deletion so no
+ * tombstones build up. Lookups take an optimistic read and only lock if a
+ * write got in the way, so readers of the same key do not contend. Nothing
+ * is allocated except when a shard grows.</p>
+ */
+final class LongTable<V> {
+    private static final int SHARDS = 64;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Replaced whole when a shard grows, so readers see matching arrays
+    private static final class Entries {
+        final long[] keys;
+        final Object[] values;
+
+        Entries(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    private static final class Shard {
+        final StampedLock lock = new StampedLock();
+        volatile Entries entries = new Entries(INITIAL_CAPACITY);
+        int size;
+    }
+
+    private final Shard[] shards = new Shard[SHARDS];
+
+    LongTable() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Returns the value for a key, or null if there is none.
+     */
+    V get(long key) {
+        long hash = hash(key);
+        Shard shard = shards[(int) (hash >>> 58)];
+        long stamp = shard.lock.tryOptimisticRead();
+        V value = find(shard.entries, key, hash);
+        if (!shard.lock.validate(stamp)) {
+            stamp = shard.lock.readLock();
+            try {
+                value = find(shard.entries, key, hash);
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Maps a key to a value, returning the value it replaced, or null.
+     *
+     * @throws IllegalArgumentException if the key is not positive
+     */
+    V put(long key, V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * Maps a key to a value unless it already has one, and returns the value
+     * it already had, or null if the value was added.
+     *
+     * @throws IllegalArgumentException if the key is not positive
+     */
+    V putIfAbsent(long key, V value) {
+        return put(key, value, false);
+    }
+
+    private V put(long key, V value, boolean replace) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        long hash = hash(key);
+        Shard shard = shards[(int) (hash >>> 58)];
+        long stamp = shard.lock.writeLock();
+        try {
+            Entries entries = shard.entries;
+            if (2 * (shard.size + 1) > entries.keys.length) {
+                entries = grow(entries);
+                shard.entries = entries;
+            }
+            int mask = entries.keys.length - 1;
+            for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                if (entries.keys[i] == key) {
+                    @SuppressWarnings("unchecked")
+                    V old = (V) entries.values[i];
+                    if (replace) {
+                        entries.values[i] = value;
+                    }
+                    return old;
+                }
+                if (entries.keys[i] == 0) {
+                    entries.values[i] = value;
+                    entries.keys[i] = key;
+                    shard.size++;
+                    return null;
+                }
+            }
+        } finally {
+            shard.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a key, returning its value, or null if there was none.
+     */
+    V remove(long key) {
+        long hash = hash(key);
+        Shard shard = shards[(int) (hash >>> 58)];
+        long stamp = shard.lock.writeLock();
+        try {
+            Entries entries = shard.entries;
+            int mask = entries.keys.length - 1;
+            int i = (int) hash & mask;
+            while (entries.keys[i] != key) {
+                if (entries.keys[i] == 0) {
+                    return null;
+                }
+                i = (i + 1) & mask;
+            }
+            @SuppressWarnings("unchecked")
+            V old = (V) entries.values[i];
+            // Shift later entries of the probe run back into the gap
+            int gap = i;
+            for (int j = (i + 1) & mask; entries.keys[j] != 0; j = (j + 1) & mask) {
+                int home = (int) hash(entries.keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    entries.keys[gap] = entries.keys[j];
+                    entries.values[gap] = entries.values[j];
+                    gap = j;
+                }
+            }
+            entries.keys[gap] = 0;
+            entries.values[gap] = null;
+            shard.size--;
+            return old;
+        } finally {
+            shard.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns every key, in no particular order. Keys added or removed
+     * meanwhile may or may not be included.
+     */
+    long[] keys() {
+        long[] result = new long[0];
+        int count = 0;
+        for (Shard shard : shards) {
+            long stamp = shard.lock.readLock();
+            try {
+                long[] keys = shard.entries.keys;
+                if (count + shard.size > result.length) {
+                    result = Arrays.copyOf(result, Math.max(2 * result.length, count + shard.size));
+                }
+                for (long key : keys) {
+                    if (key != 0) {
+                        result[count++] = key;
+                    }
+                }
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // Probes at most the whole table, so a read torn by a concurrent write
+    // ends; such reads are discarded by the caller
+    @SuppressWarnings("unchecked")
+    private static <V> V find(Entries entries, long key, long hash) {
+        long[] keys = entries.keys;
+        int mask = keys.length - 1;
+        int i = (int) hash & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long k = keys[i];
+            if (k == key) {
+                return (V) entries.values[i];
+            }
+            if (k == 0) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    private static Entries grow(Entries entries) {
+        Entries grown = new Entries(entries.keys.length * 2);
+        int mask = grown.keys.length - 1;
+        for (int j = 0; j < entries.keys.length; j++) {
+            long key = entries.keys[j];
+            if (key != 0) {
+                int i = (int) hash(key) & mask;
+                while (grown.keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                grown.keys[i] = key;
+                grown.values[i] = entries.values[j];
+            }
+        }
+        return grown;
+    }
+
+    // Spreads sequential ids over shards (top bits) and slots (low bits)
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,363 @@
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pairs waiting players into new games on a {@link GameHost}.
+ *
+ * <p>Players enqueue with an optional rating and colour preference and get a
+ * {@link Ticket} that completes when they are paired. Waiting players are
+ * kept in lock-free queues, one per rating band and colour preference, so
+ * enqueues in different bands never touch the same queue and those in one
+ * band only contend on a compare-and-set. A newcomer looks for an opponent
+ * in its own band, then the bands either side, searching only the queues of
+ * compatible preferences, so waiting players it cannot play never hide one
+ * it can. If it finds none it waits in its band, where the next compatible
+ * newcomer will find it. Unrated players are only paired with each
+ * other.</p>
+ *
+ * <p>Two players are compatible unless they want the same colour. The
+ * player with a preference, or else the one who waited longer, becomes
+ * player 1, and their colour is passed on as the game's
+ * {@code player1CheckerPreference}.</p>
+ *
+ * <pre>{@code
+ * Matchmaker matchmaker = new Matchmaker(host, 200);
+ * Matchmaker.Match match = matchmaker.enqueue("alice", 1500, "RED").await(30, TimeUnit.SECONDS);
+ * host.takeTurn(match.getGameId(), 3);
+ * }</pre>
+ */
+public class Matchmaker {
+    /** Rating of a player who has none. */
+    public static final int UNRATED = -1;
+
+    private static final int WAITING = 0;
+    private static final int MATCHED = 1;
+    private static final int CANCELLED = 2;
+    // Held by a queued ticket's own enqueue while it looks for an opponent
+    private static final int CLAIMING = 3;
+    // Tickets passed over per queue, as queued after the one looking, before
+    // giving up on the queue
+    private static final int SCAN_LIMIT = 8;
+    private static final int UNRATED_BAND = Integer.MIN_VALUE;
+
+    private final GameHost host;
+    private final int bandWidth;
+    private final ConcurrentHashMap<Integer, Band> bands = new ConcurrentHashMap<>();
+    private final LatencyHistogram pairingLatencies = new LatencyHistogram();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong cancellations = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+
+    /**
+     * @param bandWidth rating points per band; players up to about two bands
+     *                  apart can be paired
+     */
+    public Matchmaker(GameHost host, int bandWidth) {
+        if (bandWidth < 1) {
+            throw new IllegalArgumentException("Band width must be positive");
+        }
+        this.host = host;
+        this.bandWidth = bandWidth;
+    }
+
+    /**
+     * Queues an unrated player with no colour preference.
+     */
+    public Ticket enqueue(String player) {
+        return enqueue(player, UNRATED, null);
+    }
+
+    /**
+     * Queues a player to be paired.
+     *
+     * @param rating the player's rating, at least 0, or {@link #UNRATED}
+     * @param colorPreference "RED" or "BLACK", ignoring case, or null for either
+     * @return a ticket that completes when the player is in a game
+     * @throws IllegalArgumentException if the name is null or >20 chars, or the rating is invalid
+     * @throws IllegalStateException if an opponent was found but the host
+     *         could not start the game; the opponent keeps waiting
+     */
+    public Ticket enqueue(String player, int rating, String colorPreference) {
+        if (player == null || player.length() > 20) {
+            throw new IllegalArgumentException("Player name must not be null or longer than 20 characters");
+        }
+        if (rating < 0 && rating != UNRATED) {
+            throw new IllegalArgumentException("Rating must not be negative");
+        }
+        Checker preference = null;
+        if ("RED".equalsIgnoreCase(colorPreference)) {
+            preference = Checker.RED;
+        } else if ("BLACK".equalsIgnoreCase(colorPreference)) {
+            preference = Checker.BLACK;
+        }
+        int band = rating == UNRATED ? UNRATED_BAND : rating / bandWidth;
+        Ticket ticket = new Ticket(player, rating, preference, band);
+
+        // Claim a waiting opponent while this ticket is still private
+        Ticket opponent = claimOpponent(ticket, band, Long.MAX_VALUE);
+        if (opponent != null) {
+            ticket.state.set(MATCHED);
+            pair(opponent, ticket);
+            return ticket;
+        }
+
+        queueOf(ticket).offer(ticket);
+        // Numbered once queued, so every ticket numbered lower is already
+        // in a queue and will be seen by the check below
+        ticket.sequence = queued.incrementAndGet();
+
+        // Another newcomer may have queued at the same time without seeing
+        // this ticket. Only the later of the two claims the other, so they
+        // cannot claim each other and both end up waiting. Holding this
+        // ticket meanwhile keeps anyone else from claiming it.
+        if (ticket.state.compareAndSet(WAITING, CLAIMING)) {
+            opponent = claimOpponent(ticket, band, ticket.sequence);
+            if (opponent != null) {
+                ticket.state.set(MATCHED);
+                pair(opponent, ticket);
+            } else {
+                ticket.state.set(WAITING);
+            }
+        }
+        return ticket;
+    }
+
+    // Finds and claims a compatible waiting ticket numbered below the given
+    // sequence in the player's band or the bands either side
+    private Ticket claimOpponent(Ticket ticket, int band, long before) {
+        Ticket opponent = claimFrom(ticket, band, before);
+        if (opponent == null && band != UNRATED_BAND) {
+            opponent = claimFrom(ticket, band - 1, before);
+            if (opponent == null) {
+                opponent = claimFrom(ticket, band + 1, before);
+            }
+        }
+        return opponent;
+    }
+
+    // Looks in the band's queues of preferences compatible with the ticket's
+    private Ticket claimFrom(Ticket ticket, int band, long before) {
+        Band queues = bands.get(band);
+        if (queues == null) {
+            return null;
+        }
+        Ticket opponent = null;
+        if (ticket.preference != Checker.RED) {
+            opponent = claimFrom(queues.red, ticket, before);
+        }
+        if (opponent == null && ticket.preference != Checker.BLACK) {
+            opponent = claimFrom(queues.black, ticket, before);
+        }
+        if (opponent == null) {
+            opponent = claimFrom(queues.either, ticket, before);
+        }
+        return opponent;
+    }
+
+    // Every live ticket in the queue is compatible, so only tickets queued
+    // after this one count towards the scan limit. Tickets are left in the
+    // queue while looked at, so a concurrent scan never misses one that is
+    // only being passed over.
+    private Ticket claimFrom(ConcurrentLinkedQueue<Ticket> queue, Ticket ticket, long before) {
+        Iterator<Ticket> tickets = queue.iterator();
+        int skipped = 0;
+        while (skipped < SCAN_LIMIT && tickets.hasNext()) {
+            Ticket candidate = tickets.next();
+            int state = candidate.state.get();
+            if (state == MATCHED || state == CANCELLED) {
+                // Dropped as they are found
+                tickets.remove();
+                continue;
+            }
+            if (candidate == ticket || candidate.sequence >= before) {
+                skipped++;
+                continue;
+            }
+            // A ticket looking for an opponent itself only claims lower
+            // numbered tickets, so this wait always ends
+            while (candidate.state.get() == CLAIMING) {
+                Thread.onSpinWait();
+            }
+            if (candidate.state.compareAndSet(WAITING, MATCHED)) {
+                tickets.remove();
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // The ticket's own queue in its band
+    private ConcurrentLinkedQueue<Ticket> queueOf(Ticket ticket) {
+        Band queues = bands.computeIfAbsent(ticket.band, key -> new Band());
+        return ticket.preference == Checker.RED ? queues.red
+                : ticket.preference == Checker.BLACK ? queues.black : queues.either;
+    }
+
+    // Waiting tickets of one rating band, by colour preference
+    private static final class Band {
+        final ConcurrentLinkedQueue<Ticket> red = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Ticket> black = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Ticket> either = new ConcurrentLinkedQueue<>();
+    }
+
+    // Starts the game for two claimed tickets, the first having waited longer.
+    // If the host cannot start it, the waiting ticket is queued again and the
+    // newcomer's enqueue fails.
+    private void pair(Ticket earlier, Ticket later) {
+        Ticket first = earlier.preference != null || later.preference == null ? earlier : later;
+        Ticket second = first == earlier ? later : earlier;
+        Checker color = first.preference != null ? first.preference
+                : second.preference != null ? second.preference.opponent() : Checker.RED;
+        long id;
+        try {
+            id = host.startGame(first.player, second.player, color.toString());
+        } catch (RuntimeException e) {
+            // The newcomer's caller never gets its ticket, so drop it if queued
+            later.state.set(CANCELLED);
+            earlier.state.set(WAITING);
+            queueOf(earlier).offer(earlier);
+            throw e;
+        }
+        Match match = new Match(id, first.player, second.player, color);
+        long now = System.nanoTime();
+        earlier.complete(match, now);
+        later.complete(match, now);
+        matches.incrementAndGet();
+    }
+
+    /**
+     * Returns how long paired players waited, recorded once per player.
+     */
+    public LatencyHistogram getPairingLatencies() {
+        return pairingLatencies;
+    }
+
+    /**
+     * Returns the number of games started.
+     */
+    public long getMatchCount() {
+        return matches.get();
+    }
+
+    public long getCancellationCount() {
+        return cancellations.get();
+    }
+
+    /**
+     * A player's place in the queue.
+     */
+    public final class Ticket {
+        private final String player;
+        private final int rating;
+        private final Checker preference;
+        private final int band;
+        private final long enqueuedNanos = System.nanoTime();
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Match match;
+        // Order in which tickets were queued; unset until queued
+        private volatile long sequence = Long.MAX_VALUE;
+
+        Ticket(String player, int rating, Checker preference, int band) {
+            this.player = player;
+            this.rating = rating;
+            this.preference = preference;
+            this.band = band;
+        }
+
+        /**
+         * Waits until the player is paired.
+         *
+         * @return the match, or null if the wait timed out or the ticket was cancelled
+         */
+        public Match await(long timeout, TimeUnit unit) throws InterruptedException {
+            done.await(timeout, unit);
+            return match;
+        }
+
+        /**
+         * Returns the match, or null if the player has not been paired.
+         */
+        public Match getMatch() {
+            return match;
+        }
+
+        /**
+         * Leaves the queue.
+         *
+         * @return true if the player was still waiting and is no longer queued
+         */
+        public boolean cancel() {
+            while (true) {
+                if (state.compareAndSet(WAITING, CANCELLED)) {
+                    cancellations.incrementAndGet();
+                    // Removed lazily: the next scan of its band drops it
+                    done.countDown();
+                    return true;
+                }
+                if (state.get() != CLAIMING) {
+                    return false;
+                }
+                // Its enqueue is still looking for an opponent
+                Thread.onSpinWait();
+            }
+        }
+
+        public String getPlayer() {
+            return player;
+        }
+
+        public int getRating() {
+            return rating;
+        }
+
+        private void complete(Match match, long nowNanos) {
+            this.match = match;
+            pairingLatencies.record(nowNanos - enqueuedNanos);
+            done.countDown();
+        }
+    }
+
+    /**
+     * Two players paired into a game.
+     */
+    public static final class Match {
+        private final long gameId;
+        private final String player1;
+        private final String player2;
+        private final Checker player1Checker;
+
+        Match(long gameId, String player1, String player2, Checker player1Checker) {
+            this.gameId = gameId;
+            this.player1 = player1;
+            this.player2 = player2;
+            this.player1Checker = player1Checker;
+        }
+
+        public long getGameId() {
+            return gameId;
+        }
+
+        public String getPlayer1() {
+            return player1;
+        }
+
+        public String getPlayer2() {
+            return player2;
+        }
+
+        public Checker getPlayer1Checker() {
+            return player1Checker;
+        }
+
+        @Override
+        public String toString() {
+            return "Game " + gameId + ": " + player1 + " (" + player1Checker + ") vs " + player2;
+        }
+    }
+}
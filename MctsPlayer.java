@@ -0,0 +1,331 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computer player using parallel Monte Carlo Tree Search.
+ *
+ * <p>Each playout walks the shared tree with UCT selection, expands one node,
+ * finishes the game with a random rollout on a {@link Position} copy and
+ * backs the result up the path. All worker threads share one tree; a worker
+ * passing through a node temporarily counts it as a loss (virtual loss) so
+ * the others spread out over different branches.</p>
+ *
+ * <p>Search is anytime: {@link #chooseMove(Position, long)} returns the most
+ * visited move when either the playout limit or the time budget is reached.
+ * The playout limit sets the playing strength, see {@link #forLevel(int)}.</p>
+ */
+public class MctsPlayer {
+    private static final int RESULT_WIN = 2;
+    private static final int RESULT_DRAW = 1;
+    private static final int VIRTUAL_LOSS = 1;
+    private static final double EXPLORATION = 1.0;
+    private static final int CELLS = BitBoard.ROWS * BitBoard.COLUMNS;
+
+    private final int threads;
+    private final long maxPlayouts;
+    private final ExecutorService executor;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+    private volatile AnalysisCache cache = AnalysisCache.shared();
+    private volatile long lastPlayouts;
+
+    /**
+     * @param threads number of search threads
+     * @param maxPlayouts playouts per move; fewer playouts play weaker
+     */
+    public MctsPlayer(int threads, long maxPlayouts) {
+        this.threads = threads;
+        this.maxPlayouts = maxPlayouts;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "mcts-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a single-threaded player of a difficulty level from 1 (easiest)
+     * to 5 (strongest), from 400 up to about 100,000 playouts per move.
+     */
+    public static MctsPlayer forLevel(int level) {
+        if (level < 1 || level > 5) {
+            throw new IllegalArgumentException("Level must be between 1 and 5");
+        }
+        return new MctsPlayer(1, 400L << (2 * (level - 1)));
+    }
+
+    /**
+     * Sets the cache consulted by {@link #chooseMove(Game, long)}, the shared
+     * cache by default. May be null to always search.
+     */
+    public void setCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the number of playouts run for the last move chosen, 0 if it
+     * came from the cache.
+     */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    /**
+     * Chooses a move for the current player of a game.
+     *
+     * <p>Moves chosen with the full playout limit are cached; a later game
+     * reaching the same position with a player of the same strength reuses the
+     * move instead of searching again. A search cut short by the time budget
+     * is not cached, and neither is an unlimited one.</p>
+     */
+    public int chooseMove(Game game, long budgetMillis) {
+        Position position = game.getPosition();
+        AnalysisCache cache = this.cache;
+        if (cache == null || maxPlayouts == Long.MAX_VALUE) {
+            return chooseMove(position, budgetMillis);
+        }
+        int effort = 63 - Long.numberOfLeadingZeros(maxPlayouts);
+        long entry = cache.get(position, AnalysisCache.PLAYOUTS);
+        if (AnalysisCache.depth(entry) == effort && AnalysisCache.bestMove(entry) >= 0) {
+            lastPlayouts = 0;
+            return AnalysisCache.bestMove(entry);
+        }
+        int move = chooseMove(position, budgetMillis);
+        if (move >= 0 && lastPlayouts >= maxPlayouts) {
+            cache.put(position, AnalysisCache.PLAYOUTS, move, 0, effort);
+        }
+        return move;
+    }
+
+    /**
+     * Chooses a move, searching until the playout limit or the time budget is
+     * reached.
+     *
+     * @return the chosen column, or -1 if the position is already over
+     */
+    public int chooseMove(Position position, long budgetMillis) {
+        if (position.isTerminal()) {
+            return -1;
+        }
+        int wins = position.winningColumns();
+        if (wins != 0) {
+            lastPlayouts = 0;
+            return Integer.numberOfTrailingZeros(wins);
+        }
+
+        Node root = new Node(null, -1, candidateColumns(position), false, 0);
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000;
+        AtomicLong playouts = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    Worker worker = workers.get();
+                    for (int i = 1; playouts.getAndIncrement() < maxPlayouts; i++) {
+                        worker.playout(root, position);
+                        if ((i & 63) == 0 && System.nanoTime() - deadline > 0) {
+                            break;
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lastPlayouts = Math.min(playouts.get(), maxPlayouts);
+
+        int best = -1;
+        for (int col = 0; col < BitBoard.COLUMNS; col++) {
+            Node child = root.children[col];
+            if (child != null && (best < 0 || child.visits > root.children[best].visits)) {
+                best = col;
+            }
+        }
+        return best >= 0 ? best : Integer.numberOfTrailingZeros(position.legalColumns());
+    }
+
+    /**
+     * Stops the search threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Moves worth searching: non-losing moves, or any legal move if all of them lose
+    private static int candidateColumns(Position position) {
+        int safe = BitBoard.columnsOf(position.nonLosingCells());
+        return safe != 0 ? safe : position.legalColumns();
+    }
+
+    /**
+     * Plays a position out with random moves, taking immediate wins and
+     * avoiding moves that lose at once.
+     *
+     * @param position scratch position; modified
+     * @param random xorshift state, updated in {@code random[0]}
+     * @return 2 if the side to move at the start wins, 1 for a draw, 0 for a loss
+     */
+    static int rollout(Position position, long[] random) {
+        long state = random[0];
+        int sign = 0;
+        int result;
+        while (true) {
+            if (position.getMoves() == CELLS) {
+                result = RESULT_DRAW;
+                break;
+            }
+            if (position.winningColumns() != 0) {
+                result = sign == 0 ? RESULT_WIN : 0;
+                break;
+            }
+            int candidates = BitBoard.columnsOf(position.nonLosingCells());
+            if (candidates == 0) {
+                result = sign == 0 ? 0 : RESULT_WIN;
+                break;
+            }
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+            int pick = (int) ((state >>> 33) % Integer.bitCount(candidates));
+            for (int i = 0; i < pick; i++) {
+                candidates &= candidates - 1;
+            }
+            position.play(Integer.numberOfTrailingZeros(candidates));
+            sign ^= 1;
+        }
+        random[0] = state;
+        return result;
+    }
+
+    private static final class Node {
+        private static final AtomicIntegerFieldUpdater<Node> VISITS =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+        private static final AtomicIntegerFieldUpdater<Node> SCORE =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "score");
+
+        final Node parent;
+        final int column;
+        final Node[] children = new Node[BitBoard.COLUMNS];
+        final boolean terminal;
+        // Result for the player who moved into this node, when terminal
+        final int terminalResult;
+        // Columns not yet expanded, guarded by this
+        private int untried;
+        volatile int visits;
+        // Half points for the player who moved into this node
+        volatile int score;
+
+        Node(Node parent, int column, int untried, boolean terminal, int terminalResult) {
+            this.parent = parent;
+            this.column = column;
+            this.untried = untried;
+            this.terminal = terminal;
+            this.terminalResult = terminalResult;
+        }
+
+        // Expands one untried column, or returns null if fully expanded
+        synchronized Node expand(Position position, int pick) {
+            if (untried == 0) {
+                return null;
+            }
+            int choices = untried;
+            for (int i = pick % Integer.bitCount(choices); i > 0; i--) {
+                choices &= choices - 1;
+            }
+            int col = Integer.numberOfTrailingZeros(choices);
+            untried &= ~(1 << col);
+
+            position.play(col);
+            Node child;
+            if (position.lastMoveWon()) {
+                child = new Node(this, col, 0, true, RESULT_WIN);
+            } else if (position.getMoves() == CELLS) {
+                child = new Node(this, col, 0, true, RESULT_DRAW);
+            } else {
+                child = new Node(this, col, candidateColumns(position), false, 0);
+            }
+            children[col] = child;
+            return child;
+        }
+
+        Node select() {
+            double logVisits = Math.log(Math.max(1, visits));
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (Node child : children) {
+                if (child == null) {
+                    continue;
+                }
+                int childVisits = Math.max(1, child.visits);
+                double value = child.score / (2.0 * childVisits)
+                        + EXPLORATION * Math.sqrt(logVisits / childVisits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+    }
+
+    // Per-thread scratch state so playouts do not allocate outside the tree
+    private static final class Worker {
+        final Position scratch = new Position();
+        final long[] random = {System.nanoTime() | 1};
+
+        void playout(Node root, Position rootPosition) {
+            Position position = scratch;
+            position.set(rootPosition);
+            Node node = root;
+            Node.VISITS.addAndGet(node, VIRTUAL_LOSS);
+
+            int result;
+            while (true) {
+                if (node.terminal) {
+                    result = node.terminalResult;
+                    break;
+                }
+                Node expanded = node.expand(position, (int) (nextRandom() >>> 33));
+                if (expanded != null) {
+                    node = expanded;
+                    Node.VISITS.addAndGet(node, VIRTUAL_LOSS);
+                    result = node.terminal ? node.terminalResult : RESULT_WIN - rollout(position, random);
+                    break;
+                }
+                Node next = node.select();
+                if (next == null) {
+                    // Expanded by another thread but no child published yet
+                    result = RESULT_DRAW;
+                    break;
+                }
+                node = next;
+                position.play(node.column);
+                Node.VISITS.addAndGet(node, VIRTUAL_LOSS);
+            }
+
+            for (Node n = node; n != null; n = n.parent) {
+                Node.VISITS.addAndGet(n, 1 - VIRTUAL_LOSS);
+                Node.SCORE.addAndGet(n, result);
+                result = RESULT_WIN - result;
+            }
+        }
+
+        long nextRandom() {
+            long state = random[0];
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+            random[0] = state;
+            return state;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * The common Connect 4 move notation: a game written as the columns played,
+ * in order, as digits numbered from 1 at the left. For example "4453337"
+ * opens in the centre column, 0-based column 3.
+ */
+public final class MoveNotation {
+
+    private MoveNotation() {
+    }
+
+    /**
+     * Returns the 0-based column written as a notation digit, or -1 if the
+     * character is not a column.
+     */
+    public static int columnOf(int digit) {
+        return columnOf(digit, BitBoard.COLUMNS);
+    }
+
+    /**
+     * Returns the 0-based column written as a notation digit on a board with
+     * a given number of columns, or -1 if the character is not one of them.
+     */
+    public static int columnOf(int digit, int columns) {
+        int column = digit - '1';
+        return column >= 0 && column < columns ? column : -1;
+    }
+
+    /**
+     * Returns the notation digit for a 0-based column.
+     */
+    public static char digitOf(int column) {
+        return (char) ('1' + column);
+    }
+
+    /**
+     * Parses a move string into 0-based columns. Only checks the digits; whether
+     * the moves can be played is up to the engine they are played on.
+     *
+     * @throws IllegalArgumentException if the string contains anything but column digits
+     */
+    public static int[] parse(CharSequence notation) {
+        int[] columns = new int[notation.length()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = columnOf(notation.charAt(i));
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Not a column at " + i + " of \"" + notation + "\"");
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Writes the first {@code count} 0-based columns as a move string.
+     */
+    public static String format(int[] columns, int count) {
+        char[] digits = new char[count];
+        for (int i = 0; i < count; i++) {
+            digits[i] = digitOf(columns[i]);
+        }
+        return new String(digits);
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Mutable, allocation-free Connect 4 position for search and simulation.
+ *
+ * <p>Stored as two {@link BitBoard} bitboards: the stones of the side to move
+ * and the stones of both sides. Unlike {@link Game}, a Position has no
+ * player names or colors and is cheap to copy, so engines can play and undo
+ * thousands of moves per millisecond.</p>
+ *
+ * <p>Methods that take a column do not validate it; check {@link #canPlay(int)}
+ * first.</p>
+ */
+public final class Position {
+    private long current;
+    private long mask;
+    private int moves;
+
+    /**
+     * Creates the empty starting position.
+     */
+    public Position() {
+    }
+
+    /**
+     * Creates a position from its bitboards.
+     *
+     * @param current the stones of the side to move
+     * @param mask the stones of both sides
+     */
+    public Position(long current, long mask) {
+        this.current = current;
+        this.mask = mask;
+        this.moves = Long.bitCount(mask);
+    }
+
+    /**
+     * Creates a position by playing a sequence of columns from the start.
+     *
+     * @throws IllegalArgumentException if a move is out of range, in a full
+     *         column, or played after the game was already won
+     */
+    public static Position of(int... columns) {
+        Position position = new Position();
+        for (int col : columns) {
+            if (col < 0 || col >= BitBoard.COLUMNS || !position.canPlay(col) || position.isTerminal()) {
+                throw new IllegalArgumentException("Illegal move " + col + " after " + position.moves + " moves");
+            }
+            position.play(col);
+        }
+        return position;
+    }
+
+    public Position copy() {
+        Position copy = new Position();
+        copy.set(this);
+        return copy;
+    }
+
+    public void set(Position other) {
+        this.current = other.current;
+        this.mask = other.mask;
+        this.moves = other.moves;
+    }
+
+    public long getCurrent() {
+        return current;
+    }
+
+    public long getMask() {
+        return mask;
+    }
+
+    /**
+     * Returns the number of stones on the board.
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Returns a key that uniquely identifies the position.
+     *
+     * <p>In each column the key holds the side to move's stones below a single
+     * marker bit at the column's height, so it fits in 49 bits, never mixes
+     * columns, and can be turned back into a position with {@link #fromKey(long)}.</p>
+     */
+    public long key() {
+        return current + mask + BitBoard.BOTTOM_MASK;
+    }
+
+    /**
+     * Returns the smaller of this position's key and its mirror image's key,
+     * so a position and its mirror image share one key. Use it for every table
+     * keyed by position, and translate stored columns with
+     * {@link #canonicalColumn(int)}.
+     */
+    public long canonicalKey() {
+        long key = key();
+        return Math.min(key, BitBoard.mirror(key));
+    }
+
+    /**
+     * Returns true if the canonical orientation of this position is its mirror
+     * image.
+     */
+    public boolean isMirroredCanonical() {
+        long key = key();
+        return BitBoard.mirror(key) < key;
+    }
+
+    /**
+     * Translates a column between this position's orientation and its
+     * canonical orientation. The translation is its own inverse, so the same
+     * call converts a move into a canonical table and back out of it.
+     */
+    public int canonicalColumn(int col) {
+        return isMirroredCanonical() ? BitBoard.mirrorColumn(col) : col;
+    }
+
+    /**
+     * Rebuilds a position from its {@link #key()}.
+     */
+    public static Position fromKey(long key) {
+        Position position = new Position();
+        position.setKey(key);
+        return position;
+    }
+
+    /**
+     * Makes this the position with the given {@link #key()}, without
+     * allocating.
+     */
+    public void setKey(long key) {
+        long mask = 0;
+        for (int col = 0; col < BitBoard.COLUMNS; col++) {
+            long column = (key >>> (col * BitBoard.HEIGHT)) & ((1L << BitBoard.HEIGHT) - 1);
+            long marker = Long.highestOneBit(column);
+            mask |= (marker - 1) << (col * BitBoard.HEIGHT);
+        }
+        this.current = key - mask - BitBoard.BOTTOM_MASK;
+        this.mask = mask;
+        this.moves = Long.bitCount(mask);
+    }
+
+    public boolean canPlay(int col) {
+        return (mask & BitBoard.topCell(col)) == 0;
+    }
+
+    /**
+     * Drops a stone for the side to move and passes the turn.
+     */
+    public void play(int col) {
+        current ^= mask;
+        mask |= mask + (BitBoard.BOTTOM_MASK & BitBoard.columnMask(col));
+        moves++;
+    }
+
+    /**
+     * Drops a stone for the side to move into a cell returned by
+     * {@link BitBoard#playableCells(long)} and passes the turn.
+     */
+    public void playCell(long cell) {
+        current ^= mask;
+        mask |= cell;
+        moves++;
+    }
+
+    /**
+     * Returns true if playing {@code col} wins for the side to move.
+     */
+    public boolean isWinningMove(int col) {
+        return (BitBoard.winningCells(current, mask) & BitBoard.dropCell(mask, col)) != 0;
+    }
+
+    /**
+     * Returns true if the player who just moved has four in a row or the board
+     * is full.
+     */
+    public boolean isTerminal() {
+        return BitBoard.hasFour(current ^ mask) || moves == BitBoard.ROWS * BitBoard.COLUMNS;
+    }
+
+    /**
+     * Returns true if the player who just moved has four in a row.
+     */
+    public boolean lastMoveWon() {
+        return BitBoard.hasFour(current ^ mask);
+    }
+
+    public int legalColumns() {
+        return BitBoard.legalColumns(mask);
+    }
+
+    public int winningColumns() {
+        return BitBoard.winningColumns(current, mask);
+    }
+
+    public int blockingColumns() {
+        return BitBoard.winningColumns(current ^ mask, mask);
+    }
+
+    /**
+     * Returns the playable cells that do not hand the opponent an immediate
+     * win. If the opponent has two immediate threats this is empty.
+     */
+    public long nonLosingCells() {
+        long playable = BitBoard.playableCells(mask);
+        long opponentWins = BitBoard.winningCells(current ^ mask, mask);
+        long forced = playable & opponentWins;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) {
+                return 0;
+            }
+            playable = forced;
+        }
+        // Never play directly below an opponent's winning cell
+        return playable & ~(opponentWins >>> 1);
+    }
+}
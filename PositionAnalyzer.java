@@ -0,0 +1,232 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs time-budgeted, cancellable analyses of Connect 4 positions in the
+ * background.
+ *
+ * <p>Each analysis runs iterative deepening with a {@link Searcher} and reports
+ * the best move, score and principal variation to an {@link AnalysisListener}
+ * after every completed depth. Analyses run on a fixed pool of low-priority
+ * daemon threads, so no more than {@code maxConcurrentAnalyses} cores are ever
+ * spent on analysis; further requests wait in a queue and their time budget
+ * keeps running while they wait.</p>
+ *
+ * <pre>{@code
+ * PositionAnalyzer.Analysis analysis = PositionAnalyzer.shared().analyze(game, 500, result ->
+ *         System.out.println(result));
+ * AnalysisResult best = analysis.await(1, TimeUnit.SECONDS);
+ * }</pre>
+ */
+public class PositionAnalyzer {
+    private static final PositionAnalyzer SHARED =
+            new PositionAnalyzer(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    private final ExecutorService executor;
+    private final ThreadLocal<Searcher> searchers = ThreadLocal.withInitial(Searcher::new);
+    private volatile AnalysisCache cache = AnalysisCache.shared();
+
+    /**
+     * @param maxConcurrentAnalyses the number of analysis threads, and so the
+     *                              maximum number of cores used for analysis
+     */
+    public PositionAnalyzer(int maxConcurrentAnalyses) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrentAnalyses, runnable -> {
+            Thread thread = new Thread(runnable, "analysis-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the process-wide analyzer, capped at half the available cores.
+     */
+    public static PositionAnalyzer shared() {
+        return SHARED;
+    }
+
+    /**
+     * Sets the cache used by analyses started from now on, the shared cache
+     * by default. May be null to always search from depth 1.
+     */
+    public void setCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Analyzes the current position of a game.
+     *
+     * @see #analyze(Position, long, AnalysisListener)
+     */
+    public Analysis analyze(Game game, long budgetMillis, AnalysisListener listener) {
+        return start(game.getPosition(), budgetMillis, listener);
+    }
+
+    /**
+     * Analyzes the position reached by playing {@code columns} from the start.
+     *
+     * @throws IllegalArgumentException if the move sequence is illegal
+     */
+    public Analysis analyze(int[] columns, long budgetMillis, AnalysisListener listener) {
+        return analyze(Position.of(columns), budgetMillis, listener);
+    }
+
+    /**
+     * Analyzes a position.
+     *
+     * <p>The first depth always completes so callers get a move even if the
+     * budget ran out while queued.</p>
+     *
+     * <p>If the position was analyzed before, the cached depth is reported
+     * first, with no nodes and a one-move principal variation, and the search
+     * carries on from the next depth. Each analysis caches its deepest
+     * result when it finishes.</p>
+     *
+     * @param position the position to analyze; copied, so the caller may keep using it
+     * @param budgetMillis wall-clock budget measured from this call
+     * @param listener receives results as each depth completes
+     * @return a handle to follow or cancel the analysis
+     */
+    public Analysis analyze(Position position, long budgetMillis, AnalysisListener listener) {
+        return start(position.copy(), budgetMillis, listener);
+    }
+
+    // Queues an analysis of a position no caller holds
+    private Analysis start(Position position, long budgetMillis, AnalysisListener listener) {
+        Analysis analysis = new Analysis(position, System.nanoTime() + budgetMillis * 1_000_000, listener, cache);
+        executor.execute(analysis::run);
+        return analysis;
+    }
+
+    /**
+     * Stops the analysis threads. Queued analyses are not run.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A running or finished analysis.
+     */
+    public class Analysis {
+        private final Position position;
+        private final long deadlineNanos;
+        private final AnalysisListener listener;
+        private final AnalysisCache cache;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean cancelled;
+        private volatile AnalysisResult latest;
+
+        Analysis(Position position, long deadlineNanos, AnalysisListener listener, AnalysisCache cache) {
+            this.position = position;
+            this.deadlineNanos = deadlineNanos;
+            this.listener = listener;
+            this.cache = cache;
+        }
+
+        private void run() {
+            Searcher searcher = searchers.get();
+            searcher.setAbortCondition(() -> cancelled);
+            try {
+                int maxDepth = BitBoard.ROWS * BitBoard.COLUMNS - position.getMoves();
+                int firstMove = -1;
+                int startDepth = 1;
+                AnalysisResult cached = lookup();
+                if (cached != null) {
+                    latest = cached;
+                    firstMove = cached.getBestMove();
+                    listener.onDepthCompleted(cached);
+                    if (cached.isDecisive() || cached.getDepth() >= maxDepth) {
+                        return;
+                    }
+                    startDepth = cached.getDepth() + 1;
+                    searcher.setAbortCondition(() -> cancelled || System.nanoTime() - deadlineNanos > 0);
+                }
+                for (int depth = startDepth; depth <= maxDepth && !cancelled; depth++) {
+                    if (depth > 1 && System.nanoTime() - deadlineNanos > 0) {
+                        break;
+                    }
+                    AnalysisResult result = searcher.search(position, depth, firstMove);
+                    if (result == null) {
+                        break;
+                    }
+                    latest = result;
+                    firstMove = result.getBestMove();
+                    listener.onDepthCompleted(result);
+                    if (result.getBestMove() < 0 || result.isDecisive()) {
+                        break;
+                    }
+                    if (depth == 1) {
+                        // Only the first depth ignores the budget
+                        searcher.setAbortCondition(() -> cancelled || System.nanoTime() - deadlineNanos > 0);
+                    }
+                }
+            } finally {
+                // Waiters see the analysis done only once the listener has heard
+                try {
+                    store();
+                    listener.onFinished(latest, cancelled);
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        private AnalysisResult lookup() {
+            if (cache == null) {
+                return null;
+            }
+            long entry = cache.get(position, AnalysisCache.SEARCH);
+            int move = AnalysisCache.bestMove(entry);
+            if (move < 0) {
+                return null;
+            }
+            return new AnalysisResult(AnalysisCache.depth(entry), move, AnalysisCache.score(entry),
+                    new int[] {move}, 0, 0);
+        }
+
+        private void store() {
+            AnalysisResult result = latest;
+            if (cache != null && result != null && result.getBestMove() >= 0 && result.getNodes() > 0) {
+                cache.put(position, AnalysisCache.SEARCH, result.getBestMove(), result.getScore(), result.getDepth());
+            }
+        }
+
+        /**
+         * Stops the analysis at its next check. Results already reported stay valid.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * Returns the deepest completed result so far, or null if none.
+         */
+        public AnalysisResult getLatest() {
+            return latest;
+        }
+
+        /**
+         * Waits for the analysis to finish and returns its deepest result.
+         *
+         * @return the deepest completed result, or null if none completed in time
+         */
+        public AnalysisResult await(long timeout, TimeUnit unit) throws InterruptedException {
+            done.await(timeout, unit);
+            return latest;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-only database of exact {@link Solver} scores for early and mid-game
+ * positions.
+ *
+ * <p>The database is generated offline by solving every position up to a
+ * maximum number of stones, and is stored as a sorted array of 8-byte entries
+ * that is memory-mapped on open. Each entry packs a position key above its
+ * score, and positions are stored once per mirror pair, keyed by the smaller
+ * of the position's key and its mirror image's key. Lookups are a binary
+ * search over the mapped file, so opening is instant and memory is shared
+ * with the OS page cache.</p>
+ *
+ * <p>File layout, big-endian: a 16-byte header of magic {@code "C4DB"}, format
+ * version, maximum ply and a reserved int, followed by the entries.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java PositionDatabase generate FILE MAX_PLY [THREADS] [ROOT_MOVES]
+ * java PositionDatabase lookup FILE MOVES
+ * </pre>
+ * {@code ROOT_MOVES} and {@code MOVES} are in {@link MoveNotation}, columns
+ * numbered 1-7, e.g. {@code 4453}.
+ * A root restricts generation to the positions reachable from it.
+ */
+public class PositionDatabase {
+    /** Returned by {@link #lookup(Position)} for positions not in the database. */
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    private static final int MAGIC = 0x43344442;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int GENERATION_TABLE_SIZE = 1048573;
+
+    private final LongBuffer entries;
+    private final int maxPly;
+
+    private PositionDatabase(LongBuffer entries, int maxPly) {
+        this.entries = entries;
+        this.maxPly = maxPly;
+    }
+
+    /**
+     * Memory-maps a database file.
+     *
+     * @throws IOException if the file cannot be read or is not a database
+     */
+    public static PositionDatabase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.limit() < HEADER_BYTES || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new IOException("Not a position database: " + file);
+            }
+            int maxPly = mapped.getInt(8);
+            LongBuffer entries = mapped.position(HEADER_BYTES).slice().order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+            return new PositionDatabase(entries, maxPly);
+        }
+    }
+
+    /**
+     * Returns the largest number of stones of any stored position.
+     */
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    public int size() {
+        return entries.limit();
+    }
+
+    /**
+     * Returns the exact score of a position, or {@link #NOT_FOUND}.
+     *
+     * <p>Positions where the side to move can win immediately are never stored.</p>
+     */
+    public int lookup(Position position) {
+        return lookupKey(position.canonicalKey());
+    }
+
+    private int lookupKey(long canonicalKey) {
+        int low = 0;
+        int high = entries.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long entry = entries.get(mid);
+            long key = entry >>> 8;
+            if (key < canonicalKey) {
+                low = mid + 1;
+            } else if (key > canonicalKey) {
+                high = mid - 1;
+            } else {
+                return (byte) entry;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Solves every position reachable from {@code root} with at most
+     * {@code maxPly} stones and writes the database to {@code file}.
+     *
+     * <p>Levels are solved from the deepest up, each using the levels below it,
+     * so shallow positions only need short searches.</p>
+     */
+    public static void generate(Path file, Position root, int maxPly, int threads)
+            throws IOException, InterruptedException {
+        long[] solved = new long[0];
+        for (int ply = maxPly; ply >= root.getMoves(); ply--) {
+            long start = System.nanoTime();
+            long[] keys = collectLevel(root, ply);
+            PositionDatabase known = new PositionDatabase(LongBuffer.wrap(solved), maxPly);
+            long[] level = solveLevel(keys, known, threads);
+
+            long[] merged = Arrays.copyOf(solved, solved.length + level.length);
+            System.arraycopy(level, 0, merged, solved.length, level.length);
+            Arrays.sort(merged);
+            solved = merged;
+            System.out.printf("ply %d: %d positions in %.1fs%n", ply, keys.length, (System.nanoTime() - start) / 1e9);
+        }
+        write(file, solved, maxPly);
+    }
+
+    // Sorted, distinct canonical keys of the positions to store at one ply
+    private static long[] collectLevel(Position root, int ply) {
+        long[][] keys = {new long[1024]};
+        int[] count = {0};
+        collect(root.copy(), ply, keys, count);
+        long[] level = Arrays.copyOf(keys[0], count[0]);
+        Arrays.sort(level);
+        int distinct = 0;
+        for (int i = 0; i < level.length; i++) {
+            if (i == 0 || level[i] != level[i - 1]) {
+                level[distinct++] = level[i];
+            }
+        }
+        return Arrays.copyOf(level, distinct);
+    }
+
+    private static void collect(Position position, int ply, long[][] keys, int[] count) {
+        if (position.isTerminal() || position.winningColumns() != 0) {
+            return;
+        }
+        if (position.getMoves() == ply) {
+            if (count[0] == keys[0].length) {
+                keys[0] = Arrays.copyOf(keys[0], keys[0].length * 2);
+            }
+            keys[0][count[0]++] = position.canonicalKey();
+            return;
+        }
+        for (int col = 0; col < BitBoard.COLUMNS; col++) {
+            if (position.canPlay(col)) {
+                Position child = position.copy();
+                child.play(col);
+                collect(child, ply, keys, count);
+            }
+        }
+    }
+
+    private static long[] solveLevel(long[] keys, PositionDatabase known, int threads) throws InterruptedException {
+        long[] level = new long[keys.length];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                Solver solver = new Solver(GENERATION_TABLE_SIZE);
+                solver.setDatabase(known);
+                for (int i = next.getAndIncrement(); i < keys.length; i = next.getAndIncrement()) {
+                    int score = solver.solve(Position.fromKey(keys[i]));
+                    level[i] = keys[i] << 8 | (score & 0xFF);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        return level;
+    }
+
+    private static void write(Path file, long[] entries, int maxPly) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(maxPly).putInt(0).flip();
+            channel.write(header);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            for (long entry : entries) {
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    channel.write(buffer);
+                    buffer.clear();
+                }
+                buffer.putLong(entry);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length >= 3 && args[0].equals("generate")) {
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            Position root = positionOf(args.length > 4 ? args[4] : "");
+            generate(Paths.get(args[1]), root, Integer.parseInt(args[2]), threads);
+        } else if (args.length >= 3 && args[0].equals("lookup")) {
+            Position position = positionOf(args[2]);
+            PositionDatabase database = open(Paths.get(args[1]));
+            int score = database.lookup(position);
+            System.out.println(score == NOT_FOUND ? "not found" : Solver.toResult(position, score).toString());
+        } else {
+            System.out.println("Usage: java PositionDatabase generate FILE MAX_PLY [THREADS] [ROOT_MOVES]");
+            System.out.println("       java PositionDatabase lookup FILE MOVES");
+            System.out.println("MOVES are in move notation, columns 1-7");
+        }
+    }
+
+    // Plays a command-line move string, exiting on a bad one
+    private static Position positionOf(String moves) {
+        try {
+            return Position.of(MoveNotation.parse(moves));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.function.BooleanSupplier;
+
+/**
+ * Depth-limited alpha-beta search over {@link Position}s.
+ *
+ * <p>A Searcher preallocates everything it needs, so repeated searches do not
+ * allocate except for their results. Instances are not thread safe; use one
+ * per thread.</p>
+ */
+public class Searcher {
+    /** Score of a win on the very first move. */
+    public static final int WIN_SCORE = 1000;
+
+    private static final int MAX_PLY = BitBoard.ROWS * BitBoard.COLUMNS + 1;
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+    private static final int ABORT_CHECK_INTERVAL = 4096;
+
+    // Thrown to unwind an aborted search; preallocated and without a stack trace
+    private static final RuntimeException ABORT = new RuntimeException("search aborted", null, false, false) {
+    };
+
+    private final Position[] stack = new Position[MAX_PLY + 1];
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    private BooleanSupplier abortCondition = () -> false;
+    private long nodes;
+
+    public Searcher() {
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = new Position();
+        }
+    }
+
+    /**
+     * Sets a condition polled during search; when it returns true the search in
+     * progress is abandoned and {@link #search} returns null.
+     */
+    public void setAbortCondition(BooleanSupplier abortCondition) {
+        this.abortCondition = abortCondition;
+    }
+
+    /**
+     * Searches a position to a fixed depth.
+     *
+     * @param root the position to search; not modified
+     * @param depth the number of plies to look ahead, at least 1
+     * @param firstMove a column to try first, e.g. the best move of the
+     *                  previous depth, or -1
+     * @return the result, or null if the search was aborted
+     */
+    public AnalysisResult search(Position root, int depth, int firstMove) {
+        long start = System.nanoTime();
+        nodes = 0;
+        stack[0].set(root);
+
+        if (root.isTerminal()) {
+            int score = root.lastMoveWon() ? -(WIN_SCORE - root.getMoves()) : 0;
+            return new AnalysisResult(0, -1, score, new int[0], 0, System.nanoTime() - start);
+        }
+
+        int score;
+        try {
+            score = negamax(0, depth, -WIN_SCORE, WIN_SCORE, firstMove);
+        } catch (RuntimeException e) {
+            if (e == ABORT) {
+                return null;
+            }
+            throw e;
+        }
+
+        int[] line = new int[pvLength[0]];
+        System.arraycopy(pv[0], 0, line, 0, line.length);
+        return new AnalysisResult(depth, line[0], score, line, nodes, System.nanoTime() - start);
+    }
+
+    private int negamax(int ply, int depth, int alpha, int beta, int firstMove) {
+        Position position = stack[ply];
+        pvLength[ply] = 0;
+        if (++nodes % ABORT_CHECK_INTERVAL == 0 && abortCondition.getAsBoolean()) {
+            throw ABORT;
+        }
+
+        int wins = position.winningColumns();
+        if (wins != 0) {
+            setLeaf(ply, Integer.numberOfTrailingZeros(wins));
+            return WIN_SCORE - (position.getMoves() + 1);
+        }
+        if (position.getMoves() == BitBoard.ROWS * BitBoard.COLUMNS) {
+            return 0;
+        }
+
+        long candidates = position.nonLosingCells();
+        if (candidates == 0) {
+            // Every move lets the opponent win next turn
+            setLeaf(ply, Integer.numberOfTrailingZeros(position.legalColumns()));
+            return -(WIN_SCORE - (position.getMoves() + 2));
+        }
+        if (depth == 0) {
+            return evaluate(position);
+        }
+
+        int best = -WIN_SCORE;
+        for (int i = -1; i < COLUMN_ORDER.length; i++) {
+            int col = i < 0 ? firstMove : COLUMN_ORDER[i];
+            if (col < 0 || (i >= 0 && col == firstMove) || (candidates & BitBoard.columnMask(col)) == 0) {
+                continue;
+            }
+
+            Position child = stack[ply + 1];
+            child.set(position);
+            child.play(col);
+            int score = -negamax(ply + 1, depth - 1, -beta, -alpha, -1);
+
+            if (score > best) {
+                best = score;
+                pv[ply][0] = col;
+                System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+                pvLength[ply] = pvLength[ply + 1] + 1;
+            }
+            if (score > alpha) {
+                alpha = score;
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private void setLeaf(int ply, int col) {
+        pv[ply][0] = col;
+        pvLength[ply] = 1;
+    }
+
+    /**
+     * Static estimate of a quiet position for the side to move: open threats
+     * and control of the center column.
+     */
+    static int evaluate(Position position) {
+        long mask = position.getMask();
+        long own = position.getCurrent();
+        long opponent = own ^ mask;
+        int threats = Long.bitCount(BitBoard.winningCells(own, mask))
+                - Long.bitCount(BitBoard.winningCells(opponent, mask));
+        int center = Long.bitCount(own & BitBoard.columnMask(3))
+                - Long.bitCount(opponent & BitBoard.columnMask(3));
+        return 10 * threats + 3 * center;
+    }
+}
@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays games against itself and writes every position, labelled with the
+ * game's outcome, to binary files for training evaluation models.
+ *
+ * <p>Games open with a few random non-losing moves, so they spread over many
+ * positions, and continue with the best move of a fixed-depth
+ * {@link Searcher}, whose score is recorded with each searched position.</p>
+ *
+ * <p>Records are written through two buffers: generators fill one while a
+ * writer thread writes the other, so disk latency only holds generation up
+ * if the disk falls a whole buffer behind; {@link #getStallNanos()} reports
+ * any such wait. A file is closed and the next one started after
+ * {@code recordsPerFile} records.</p>
+ *
+ * <p>Files are named {@code selfplay-NNNNNN.bin} and start with a 16-byte
+ * header: magic (int), format (int), record size (int) and a reserved int.
+ * Each {@value #RECORD_BYTES}-byte record, little-endian, holds: first
+ * player's stones (long), second player's stones (long), both as
+ * {@link BitBoard}s; side to move (byte, 1 or 2); outcome (byte, a
+ * {@link ConnectFourEngine} winner); ply (byte); flags (byte, bit 0 set if
+ * there is a score); and the search score for the side to move (int), as in
+ * {@link AnalysisResult#getScore()}.</p>
+ */
+public class SelfPlayExporter implements AutoCloseable {
+    public static final int RECORD_BYTES = 24;
+    public static final int HEADER_BYTES = 16;
+    public static final byte HAS_SCORE = 1;
+
+    private static final int MAGIC = 0x43345350;
+    private static final int FORMAT = 1;
+    private static final int CELLS = BitBoard.ROWS * BitBoard.COLUMNS;
+    private static final int BUFFER_BYTES = RECORD_BYTES * (1 << 17);
+    private static final int RANDOM_PLIES = 8;
+
+    private final Path directory;
+    private final long recordsPerFile;
+    private final int searchDepth;
+    private final AtomicLong seeds;
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(1);
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(2);
+    // Handed to the writer to stop it
+    private final ByteBuffer end = ByteBuffer.allocate(0);
+    private final Thread writer;
+    private ByteBuffer active;
+    private volatile IOException failure;
+
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong stallNanos = new AtomicLong();
+    private FileChannel channel;
+    private int fileIndex;
+    private long recordsInFile;
+    private volatile int files;
+
+    /**
+     * @param recordsPerFile records per file before starting the next one
+     * @param searchDepth plies searched per move after the opening, at least 1
+     * @param seed seed for the random openings
+     * @throws IOException if the directory cannot be created
+     */
+    public SelfPlayExporter(Path directory, long recordsPerFile, int searchDepth, long seed) throws IOException {
+        if (recordsPerFile < 1 || searchDepth < 1) {
+            throw new IllegalArgumentException("Records per file and search depth must be positive");
+        }
+        this.directory = directory;
+        this.recordsPerFile = recordsPerFile;
+        this.searchDepth = searchDepth;
+        this.seeds = new AtomicLong(seed);
+        Files.createDirectories(directory);
+        this.active = newBuffer();
+        free.add(newBuffer());
+        this.writer = new Thread(this::writeLoop, "selfplay-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Plays games on a number of threads and records their positions.
+     * Returns when every game has been handed to the writer.
+     */
+    public void generate(long count, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicLong remaining = new AtomicLong(count);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    Generator generator = new Generator(mix(seeds.incrementAndGet()));
+                    while (remaining.getAndDecrement() > 0) {
+                        generator.playGame();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public long getGames() {
+        return games.get();
+    }
+
+    public long getRecords() {
+        return records.get();
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * Returns the total time generators waited for the writer to free a buffer.
+     */
+    public long getStallNanos() {
+        return stallNanos.get();
+    }
+
+    /**
+     * Writes the remaining records and closes the last file.
+     *
+     * @throws IOException if any write failed; records after the failure are lost
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            handOff(active);
+            active = null;
+        }
+        try {
+            full.put(end);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Appends one finished game, swapping buffers when the active one fills
+    private synchronized void append(ByteBuffer game) {
+        if (active == null) {
+            throw new IllegalStateException("Exporter is closed");
+        }
+        if (active.remaining() < game.remaining()) {
+            long begin = System.nanoTime();
+            handOff(active);
+            try {
+                active = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                active = newBuffer();
+            }
+            stallNanos.addAndGet(System.nanoTime() - begin);
+        }
+        records.addAndGet(game.remaining() / RECORD_BYTES);
+        games.incrementAndGet();
+        active.put(game);
+    }
+
+    private void handOff(ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            full.put(buffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteBuffer buffer = full.take();
+                if (buffer == end) {
+                    break;
+                }
+                if (failure == null) {
+                    try {
+                        write(buffer);
+                    } catch (IOException e) {
+                        EventLog.shared().error("selfplay-write-failed", EventLog.NO_GAME, e.getMessage());
+                        failure = e;
+                    }
+                }
+                buffer.clear();
+                free.put(buffer);
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    // Writes whole records, starting a new file whenever the current one is full
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel == null || recordsInFile == recordsPerFile) {
+                rotate();
+            }
+            long room = (recordsPerFile - recordsInFile) * RECORD_BYTES;
+            int limit = buffer.limit();
+            buffer.limit((int) Math.min(limit, buffer.position() + room));
+            recordsInFile += buffer.remaining() / RECORD_BYTES;
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.limit(limit);
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        Path file = directory.resolve(String.format("selfplay-%06d.bin", fileIndex++));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(FORMAT).putInt(RECORD_BYTES).putInt(0).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        recordsInFile = 0;
+        files = fileIndex;
+    }
+
+    private static ByteBuffer newBuffer() {
+        return ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // SplitMix64, so consecutive seeds give unrelated xorshift states
+    private static long mix(long seed) {
+        long z = seed * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        z = z ^ (z >>> 31);
+        return z != 0 ? z : 1;
+    }
+
+    /**
+     * Plays games on one thread, collecting each game's records before the
+     * outcome is known.
+     */
+    private final class Generator {
+        private final Searcher searcher = new Searcher();
+        private final Position empty = new Position();
+        private final Position position = new Position();
+        private final ByteBuffer game = ByteBuffer.allocate(RECORD_BYTES * CELLS).order(ByteOrder.LITTLE_ENDIAN);
+        private long random;
+
+        Generator(long seed) {
+            this.random = seed;
+        }
+
+        void playGame() {
+            game.clear();
+            position.set(empty);
+            int winner = ConnectFourEngine.DRAW;
+            while (position.getMoves() < CELLS) {
+                int column;
+                boolean scored = false;
+                int score = 0;
+                int candidates = BitBoard.columnsOf(position.nonLosingCells());
+                if (position.getMoves() < RANDOM_PLIES && candidates != 0 && position.winningColumns() == 0) {
+                    column = pick(candidates);
+                } else {
+                    AnalysisResult result = searcher.search(position, searchDepth, -1);
+                    column = result.getBestMove();
+                    score = result.getScore();
+                    scored = true;
+                }
+                record(scored, score);
+                if (position.isWinningMove(column)) {
+                    winner = position.getMoves() % 2 == 0 ? ConnectFourEngine.FIRST : ConnectFourEngine.SECOND;
+                    position.play(column);
+                    break;
+                }
+                position.play(column);
+            }
+            // The outcome goes into every record once the game is over
+            for (int offset = 17; offset < game.position(); offset += RECORD_BYTES) {
+                game.put(offset, (byte) winner);
+            }
+            game.flip();
+            append(game);
+        }
+
+        private void record(boolean scored, int score) {
+            int moves = position.getMoves();
+            long current = position.getCurrent();
+            long other = current ^ position.getMask();
+            boolean firstToMove = moves % 2 == 0;
+            game.putLong(firstToMove ? current : other);
+            game.putLong(firstToMove ? other : current);
+            game.put((byte) (firstToMove ? 1 : 2));
+            game.put((byte) 0);
+            game.put((byte) moves);
+            game.put(scored ? HAS_SCORE : 0);
+            game.putInt(score);
+        }
+
+        private int pick(int columns) {
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            int pick = (int) ((random >>> 33) % Integer.bitCount(columns));
+            for (int i = 0; i < pick; i++) {
+                columns &= columns - 1;
+            }
+            return Integer.numberOfTrailingZeros(columns);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java SelfPlayExporter DIR GAMES [DEPTH] [THREADS] [RECORDS_PER_FILE]");
+            return;
+        }
+        long count = Long.parseLong(args[1]);
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long perFile = args.length > 4 ? Long.parseLong(args[4]) : 10_000_000;
+        long begin = System.nanoTime();
+        SelfPlayExporter exporter = new SelfPlayExporter(Paths.get(args[0]), perFile, depth, System.nanoTime());
+        try {
+            exporter.generate(count, threads);
+        } finally {
+            exporter.close();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%d games, %d records in %d files in %.1f s (%.1f M records/hour, %.1f ms stalled)%n",
+                exporter.getGames(), exporter.getRecords(), exporter.getFiles(), seconds,
+                exporter.getRecords() / seconds * 3600 / 1e6, exporter.getStallNanos() / 1e6);
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves a {@link GameHost} over TCP to {@link ShardRouter}s, as one node of a
+ * sharded set of hosts.
+ *
+ * <p>The protocol is a binary request/response exchange over long-lived
+ * connections, one request in flight per connection. A request is an
+ * operation code (byte), a game id (long) and the operation's arguments; a
+ * response is a status (byte) followed by the result, or by an error message
+ * if the status is not {@link #OK}. Strings are written with
+ * {@link DataOutputStream#writeUTF(String)}, preceded by a boolean that is
+ * false for null.</p>
+ *
+ * <pre>
+ * java ShardNode PORT [DATA_DIR]
+ * </pre>
+ */
+public class ShardNode implements AutoCloseable {
+    static final byte START = 1;
+    static final byte STATE = 2;
+    static final byte TURN = 3;
+    static final byte MOVES = 4;
+    static final byte MOVE_STRING = 5;
+    static final byte RESET = 6;
+    static final byte END = 7;
+    static final byte RELEASE = 8;
+    static final byte LEGAL_MOVES = 9;
+    static final byte WINNING_MOVES = 10;
+    static final byte BLOCKING_MOVES = 11;
+    static final byte EXPORT = 12;
+    static final byte IMPORT = 13;
+    static final byte IDS = 14;
+    static final byte COPY = 15;
+
+    static final byte OK = 0;
+    static final byte BAD_REQUEST = 1;
+    static final byte FAILED = 2;
+
+    private final GameHost host;
+    private final ServerSocket server;
+    private final ExecutorService connections;
+    private final Thread acceptor;
+
+    /**
+     * Listens on the loopback interface.
+     *
+     * @param port the port, or 0 for any free port
+     */
+    public ShardNode(GameHost host, int port) throws IOException {
+        this(host, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Listens on an address.
+     */
+    public ShardNode(GameHost host, InetSocketAddress address) throws IOException {
+        this.host = host;
+        this.server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(address);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-connection-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.acceptor = new Thread(this::acceptLoop, "shard-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public GameHost getHost() {
+        return host;
+    }
+
+    /**
+     * Stops accepting and serving requests. The host is left running.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    EventLog.shared().warn("shard-accept-failed", EventLog.NO_GAME, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                long id = in.readLong();
+                try {
+                    handle(op, id, in, out);
+                } catch (IllegalArgumentException e) {
+                    out.writeByte(BAD_REQUEST);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                } catch (RuntimeException e) {
+                    out.writeByte(FAILED);
+                    out.writeUTF(e.toString());
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!server.isClosed()) {
+                EventLog.shared().warn("shard-connection-failed", EventLog.NO_GAME, e.getMessage());
+            }
+        }
+    }
+
+    // Reads the rest of one request, runs it and writes a successful response;
+    // arguments are read in full before anything can throw
+    private void handle(byte op, long id, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case START: {
+                String player1 = in.readUTF();
+                String player2 = in.readUTF();
+                String preference = in.readUTF();
+                long base = in.readLong();
+                long increment = in.readLong();
+                host.startGame(id, player1, player2, preference, base > 0 ? new TimeControl(base, increment) : null);
+                writeString(out, host.getGameState(id));
+                break;
+            }
+            case STATE:
+                writeString(out, host.getGameState(id));
+                break;
+            case TURN: {
+                int column = in.readInt();
+                writeString(out, host.takeTurn(id, column));
+                break;
+            }
+            case MOVES: {
+                String moves = in.readUTF();
+                writeString(out, host.playMoves(id, moves));
+                break;
+            }
+            case MOVE_STRING:
+                writeString(out, host.getMoveString(id));
+                break;
+            case RESET:
+                writeString(out, host.resetGame(id));
+                break;
+            case END:
+                writeString(out, host.endGame(id));
+                break;
+            case RELEASE: {
+                boolean released = host.releaseGame(id);
+                out.writeByte(OK);
+                out.writeBoolean(released);
+                break;
+            }
+            case LEGAL_MOVES:
+            case WINNING_MOVES:
+            case BLOCKING_MOVES: {
+                int mask = op == LEGAL_MOVES ? host.getLegalMoves(id)
+                        : op == WINNING_MOVES ? host.getWinningMoves(id) : host.getBlockingMoves(id);
+                out.writeByte(OK);
+                out.writeInt(mask);
+                break;
+            }
+            case EXPORT:
+            case COPY: {
+                byte[] state = op == EXPORT ? host.exportGame(id) : host.copyGame(id);
+                out.writeByte(OK);
+                out.writeInt(state != null ? state.length : -1);
+                if (state != null) {
+                    out.write(state);
+                }
+                break;
+            }
+            case IMPORT: {
+                byte[] state = new byte[in.readInt()];
+                in.readFully(state);
+                host.importGame(id, state);
+                out.writeByte(OK);
+                break;
+            }
+            case IDS: {
+                long[] ids = host.getGameIds();
+                out.writeByte(OK);
+                out.writeInt(ids.length);
+                for (long each : ids) {
+                    out.writeLong(each);
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation " + op);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeByte(OK);
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: java ShardNode PORT [DATA_DIR]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        Path dataDirectory = args.length > 1 ? Paths.get(args[1]) : null;
+        GameHost host = new GameHost(0, Integer.MAX_VALUE, null, dataDirectory, dataDirectory != null ? 60_000 : 0);
+        ShardNode node = new ShardNode(host, port);
+        System.out.println("Shard node serving on port " + node.getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(host::shutdown));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,591 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Client for a sharded set of {@link ShardNode}s, routing each call to the
+ * node that owns its game on a {@link HashRing}.
+ *
+ * <p>The router picks a random id for each new game, from the range
+ * {@link GameHost} leaves to callers, and starts it on the id's owner, so
+ * any router with the same ring finds it again. Its methods mirror
+ * {@link GameHost}'s; {@link #newSession()} wraps a routed game as a
+ * {@link ConnectFourJSON}.</p>
+ *
+ * <p>When a node joins or leaves, the games whose owner changes are moved in
+ * compact form: copied to the new owner, and removed from the old one only
+ * once every game has been copied and the ring switched. If a copy fails,
+ * the copies made so far are dropped and the ring is left as it was, so a
+ * failed change loses no game. Calls wait while games move, so none sees a
+ * game missing. Membership changes are not coordinated between routers; when
+ * several routers share nodes, only one should change membership, and the
+ * others must be given the same changes.</p>
+ *
+ * <p>Connections are pooled per node and reused; calls for different games
+ * proceed in parallel.</p>
+ */
+public class ShardRouter implements AutoCloseable {
+    private static final String NO_GAME = "{\"error\": \"No game\"}";
+    private static final String NOT_STARTED = "{\"error\": \"Game not started\"}";
+
+    private final Map<String, NodeClient> clients = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock membership = new ReentrantReadWriteLock();
+    private final AtomicLong migrated = new AtomicLong();
+    private volatile HashRing ring;
+
+    public ShardRouter() {
+        this(HashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardRouter(int virtualNodes) {
+        this.ring = new HashRing(virtualNodes);
+    }
+
+    /**
+     * Adds a node and moves to it the games it now owns.
+     *
+     * @param name the node's name on the ring; routers sharing nodes must use the same names
+     * @throws UncheckedIOException if a node cannot be reached
+     */
+    public void addNode(String name, InetSocketAddress address) {
+        membership.writeLock().lock();
+        try {
+            HashRing next = ring.with(name);
+            NodeClient client = new NodeClient(address);
+            clients.put(name, client);
+            List<Move> moves = new ArrayList<>();
+            try {
+                for (String node : ring.getNodes()) {
+                    copyGames(node, next, moves);
+                }
+            } catch (RuntimeException e) {
+                dropCopies(moves);
+                clients.remove(name).close();
+                throw e;
+            }
+            ring = next;
+            removeOriginals(moves);
+        } finally {
+            membership.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a node's games to the nodes that own them without it, then removes it.
+     *
+     * @throws UncheckedIOException if a node cannot be reached
+     */
+    public void removeNode(String name) {
+        membership.writeLock().lock();
+        try {
+            HashRing next = ring.without(name);
+            List<Move> moves = new ArrayList<>();
+            if (!next.getNodes().isEmpty()) {
+                try {
+                    copyGames(name, next, moves);
+                } catch (RuntimeException e) {
+                    dropCopies(moves);
+                    throw e;
+                }
+            }
+            ring = next;
+            removeOriginals(moves);
+            clients.remove(name).close();
+        } finally {
+            membership.writeLock().unlock();
+        }
+    }
+
+    // A game copied to its owner in the next ring, still held by its old one
+    private static final class Move {
+        final long id;
+        final String from;
+        final String to;
+
+        Move(long id, String from, String to) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    // Copies the games on a node that another node owns in the next ring to
+    // that node, recording each in moves; the node keeps its own copies
+    private void copyGames(String node, HashRing next, List<Move> moves) {
+        NodeClient from = clients.get(node);
+        for (long id : from.ids()) {
+            String owner = next.nodeFor(id);
+            if (!owner.equals(node)) {
+                byte[] state = from.copyGame(id);
+                if (state != null) {
+                    clients.get(owner).importGame(id, state);
+                    moves.add(new Move(id, node, owner));
+                }
+            }
+        }
+    }
+
+    // Undoes the copies of a membership change that failed; the old owners
+    // still hold every game
+    private void dropCopies(List<Move> moves) {
+        for (Move move : moves) {
+            try {
+                clients.get(move.to).releaseGame(move.id);
+            } catch (RuntimeException e) {
+                EventLog.shared().warn("shard-rollback-failed", move.id, e.getMessage());
+            }
+        }
+    }
+
+    // Removes moved games from their old owners once the ring points at the
+    // new ones; a copy left behind is unreachable, so failures are only logged
+    private void removeOriginals(List<Move> moves) {
+        for (Move move : moves) {
+            try {
+                clients.get(move.from).releaseGame(move.id);
+            } catch (RuntimeException e) {
+                EventLog.shared().warn("shard-release-failed", move.id, e.getMessage());
+            }
+            migrated.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of games moved between nodes so far.
+     */
+    public long getMigratedCount() {
+        return migrated.get();
+    }
+
+    public HashRing getRing() {
+        return ring;
+    }
+
+    /**
+     * @see GameHost#startGame(String, String, String)
+     */
+    public long startGame(String player1, String player2, String player1CheckerPreference) {
+        return startGame(player1, player2, player1CheckerPreference, null);
+    }
+
+    /**
+     * Starts a game on the node that owns a new random id.
+     *
+     * @return the id of the new game
+     * @throws IllegalArgumentException if player1 or player2 is null or >20 chars
+     * @see GameHost#startGame(String, String, String, TimeControl)
+     */
+    public long startGame(String player1, String player2, String player1CheckerPreference, TimeControl timeControl) {
+        if (player1 == null || player2 == null) {
+            throw new IllegalArgumentException("Player names must not be null");
+        }
+        String preference = player1CheckerPreference != null ? player1CheckerPreference : "";
+        long base = timeControl != null ? timeControl.getBaseMillis() : 0;
+        long increment = timeControl != null ? timeControl.getIncrementMillis() : 0;
+        while (true) {
+            long id = ThreadLocalRandom.current().nextLong(GameHost.FIRST_CALLER_ID, Long.MAX_VALUE);
+            try {
+                call(ShardNode.START, id, out -> {
+                    out.writeUTF(player1);
+                    out.writeUTF(player2);
+                    out.writeUTF(preference);
+                    out.writeLong(base);
+                    out.writeLong(increment);
+                }, ShardRouter::readString);
+                return id;
+            } catch (IllegalArgumentException e) {
+                if (!e.getMessage().startsWith("Game id")) {
+                    throw e;
+                }
+                // Picked an id in use; try another
+            }
+        }
+    }
+
+    /**
+     * @see GameHost#getGameState(long)
+     */
+    public String getGameState(long id) {
+        return call(ShardNode.STATE, id, null, ShardRouter::readString);
+    }
+
+    /**
+     * @see GameHost#takeTurn(long, int)
+     */
+    public String takeTurn(long id, int column) {
+        return call(ShardNode.TURN, id, out -> out.writeInt(column), ShardRouter::readString);
+    }
+
+    /**
+     * @see GameHost#playMoves(long, String)
+     */
+    public String playMoves(long id, String moves) {
+        return call(ShardNode.MOVES, id, out -> out.writeUTF(moves), ShardRouter::readString);
+    }
+
+    /**
+     * @see GameHost#getMoveString(long)
+     */
+    public String getMoveString(long id) {
+        return call(ShardNode.MOVE_STRING, id, null, ShardRouter::readString);
+    }
+
+    /**
+     * @see GameHost#resetGame(long)
+     */
+    public String resetGame(long id) {
+        return call(ShardNode.RESET, id, null, ShardRouter::readString);
+    }
+
+    /**
+     * @see GameHost#endGame(long)
+     */
+    public String endGame(long id) {
+        return call(ShardNode.END, id, null, ShardRouter::readString);
+    }
+
+    /**
+     * @see GameHost#releaseGame(long)
+     */
+    public boolean releaseGame(long id) {
+        return call(ShardNode.RELEASE, id, null, DataInputStream::readBoolean);
+    }
+
+    /**
+     * @see GameHost#getLegalMoves(long)
+     */
+    public int getLegalMoves(long id) {
+        return call(ShardNode.LEGAL_MOVES, id, null, DataInputStream::readInt);
+    }
+
+    /**
+     * @see GameHost#getWinningMoves(long)
+     */
+    public int getWinningMoves(long id) {
+        return call(ShardNode.WINNING_MOVES, id, null, DataInputStream::readInt);
+    }
+
+    /**
+     * @see GameHost#getBlockingMoves(long)
+     */
+    public int getBlockingMoves(long id) {
+        return call(ShardNode.BLOCKING_MOVES, id, null, DataInputStream::readInt);
+    }
+
+    /**
+     * Returns a single-game view of the sharded games. Starting a game through
+     * it releases the game it held before.
+     */
+    public ConnectFourJSON newSession() {
+        return new Session();
+    }
+
+    /**
+     * Closes the connections to every node.
+     */
+    @Override
+    public void close() {
+        membership.writeLock().lock();
+        try {
+            for (NodeClient client : clients.values()) {
+                client.close();
+            }
+            clients.clear();
+            ring = new HashRing(ring.getVirtualNodes());
+        } finally {
+            membership.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks a set of running nodes: starts games on all but the last node,
+     * adds the last node, removes the first, and checks after each change
+     * that every game is still found with the same moves.
+     *
+     * <pre>
+     * java ShardRouter HOST:PORT HOST:PORT... [GAMES]
+     * </pre>
+     */
+    public static void main(String[] args) {
+        int nodeCount = args.length;
+        int games = 10_000;
+        if (nodeCount > 0 && !args[nodeCount - 1].contains(":")) {
+            games = Integer.parseInt(args[--nodeCount]);
+        }
+        if (nodeCount < 2) {
+            System.out.println("Usage: java ShardRouter HOST:PORT HOST:PORT... [GAMES]");
+            return;
+        }
+        try (ShardRouter router = new ShardRouter()) {
+            for (int i = 0; i < nodeCount - 1; i++) {
+                router.addNode(args[i], addressOf(args[i]));
+            }
+            long[] ids = new long[games];
+            String[] moves = new String[games];
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < games; i++) {
+                ids[i] = router.startGame("player-" + i, "rival-" + i, "RED");
+                for (int move = random.nextInt(10); move > 0; move--) {
+                    router.takeTurn(ids[i], random.nextInt(BitBoard.COLUMNS));
+                }
+                moves[i] = router.getMoveString(ids[i]);
+            }
+            System.out.printf("Started %d games on %d nodes%n", games, nodeCount - 1);
+
+            long begin = System.nanoTime();
+            router.addNode(args[nodeCount - 1], addressOf(args[nodeCount - 1]));
+            System.out.printf("Added %s: moved %d games in %.0f ms, %d missing%n", args[nodeCount - 1],
+                    router.getMigratedCount(), (System.nanoTime() - begin) / 1e6, countMissing(router, ids, moves));
+
+            long before = router.getMigratedCount();
+            begin = System.nanoTime();
+            router.removeNode(args[0]);
+            System.out.printf("Removed %s: moved %d games in %.0f ms, %d missing%n", args[0],
+                    router.getMigratedCount() - before, (System.nanoTime() - begin) / 1e6,
+                    countMissing(router, ids, moves));
+
+            for (long id : ids) {
+                router.releaseGame(id);
+            }
+        }
+    }
+
+    private static int countMissing(ShardRouter router, long[] ids, String[] moves) {
+        int missing = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (!moves[i].equals(router.getMoveString(ids[i]))) {
+                missing++;
+            }
+        }
+        return missing;
+    }
+
+    private static InetSocketAddress addressOf(String hostAndPort) {
+        int colon = hostAndPort.lastIndexOf(':');
+        return new InetSocketAddress(hostAndPort.substring(0, colon), Integer.parseInt(hostAndPort.substring(colon + 1)));
+    }
+
+    private <T> T call(byte op, long id, Request request, Response<T> response) {
+        membership.readLock().lock();
+        try {
+            return clients.get(ring.nodeFor(id)).call(op, id, request, response);
+        } finally {
+            membership.readLock().unlock();
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface Response<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Pooled connections to one node.
+     */
+    private static final class NodeClient {
+        private final InetSocketAddress address;
+        private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+        private volatile boolean closed;
+
+        NodeClient(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        <T> T call(byte op, long id, Request request, Response<T> response) {
+            Connection connection = idle.poll();
+            try {
+                if (connection == null) {
+                    connection = new Connection(address);
+                }
+                connection.out.writeByte(op);
+                connection.out.writeLong(id);
+                if (request != null) {
+                    request.write(connection.out);
+                }
+                connection.out.flush();
+                byte status = connection.in.readByte();
+                if (status != ShardNode.OK) {
+                    String message = connection.in.readUTF();
+                    release(connection);
+                    if (status == ShardNode.BAD_REQUEST) {
+                        throw new IllegalArgumentException(message);
+                    }
+                    throw new IllegalStateException("Node " + address + " failed: " + message);
+                }
+                T result = response != null ? response.read(connection.in) : null;
+                release(connection);
+                return result;
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.close();
+                }
+                throw new UncheckedIOException("Node " + address + " is unreachable", e);
+            }
+        }
+
+        long[] ids() {
+            return call(ShardNode.IDS, 0, null, in -> {
+                long[] ids = new long[in.readInt()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = in.readLong();
+                }
+                return ids;
+            });
+        }
+
+        byte[] copyGame(long id) {
+            return call(ShardNode.COPY, id, null, in -> {
+                int length = in.readInt();
+                if (length < 0) {
+                    return null;
+                }
+                byte[] state = new byte[length];
+                in.readFully(state);
+                return state;
+            });
+        }
+
+        boolean releaseGame(long id) {
+            return call(ShardNode.RELEASE, id, null, DataInputStream::readBoolean);
+        }
+
+        void importGame(long id, byte[] state) {
+            call(ShardNode.IMPORT, id, out -> {
+                out.writeInt(state.length);
+                out.write(state);
+            }, null);
+        }
+
+        private void release(Connection connection) {
+            if (closed) {
+                connection.close();
+            } else {
+                idle.offer(connection);
+            }
+        }
+
+        void close() {
+            closed = true;
+            Connection connection;
+            while ((connection = idle.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress address) throws IOException {
+            this.socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken
+            }
+        }
+    }
+
+    /**
+     * One routed game at a time, behind the single-game API.
+     */
+    private final class Session implements ConnectFourJSON {
+        private long id;
+
+        @Override
+        public String startGame(String player1, String player2, String player1CheckerPreference) {
+            return startGame(player1, player2, player1CheckerPreference, null);
+        }
+
+        @Override
+        public String startGame(String player1, String player2) {
+            return startGame(player1, player2, "RED", null);
+        }
+
+        @Override
+        public String startGame(String player1, String player2, String player1CheckerPreference,
+                                TimeControl timeControl) {
+            long started = ShardRouter.this.startGame(player1, player2, player1CheckerPreference, timeControl);
+            if (id != 0) {
+                ShardRouter.this.releaseGame(id);
+            }
+            id = started;
+            return ShardRouter.this.getGameState(id);
+        }
+
+        @Override
+        public String resetGame() {
+            return id != 0 ? ShardRouter.this.resetGame(id) : NO_GAME;
+        }
+
+        @Override
+        public String endGame() {
+            return id != 0 ? ShardRouter.this.endGame(id) : NO_GAME;
+        }
+
+        @Override
+        public String takeTurn(int column) {
+            return id != 0 ? ShardRouter.this.takeTurn(id, column) : NOT_STARTED;
+        }
+
+        @Override
+        public String getGameState() {
+            return id != 0 ? ShardRouter.this.getGameState(id) : NOT_STARTED;
+        }
+
+        @Override
+        public int getLegalMoves() {
+            return id != 0 ? ShardRouter.this.getLegalMoves(id) : 0;
+        }
+
+        @Override
+        public int getWinningMoves() {
+            return id != 0 ? ShardRouter.this.getWinningMoves(id) : 0;
+        }
+
+        @Override
+        public int getBlockingMoves() {
+            return id != 0 ? ShardRouter.this.getBlockingMoves(id) : 0;
+        }
+
+        @Override
+        public String getMoveString() {
+            String moves = id != 0 ? ShardRouter.this.getMoveString(id) : null;
+            return moves != null ? moves : "";
+        }
+
+        @Override
+        public String playMoves(String moves) {
+            return id != 0 ? ShardRouter.this.playMoves(id, moves) : NOT_STARTED;
+        }
+    }
+}
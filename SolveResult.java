@@ -0,0 +1,49 @@
+/**
+ * The exact value of a position under perfect play, from the point of view of
+ * the side to move.
+ */
+public final class SolveResult {
+
+    /**
+     * Game-theoretic outcome for the side to move.
+     */
+    public enum Outcome {
+        WIN,
+        DRAW,
+        LOSS
+    }
+
+    private final Outcome outcome;
+    private final int score;
+    private final int pliesToEnd;
+
+    public SolveResult(Outcome outcome, int score, int pliesToEnd) {
+        this.outcome = outcome;
+        this.score = score;
+        this.pliesToEnd = pliesToEnd;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Returns the {@link Solver} score.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of plies until the winning stone is played, or until
+     * the board is full for a draw.
+     */
+    public int getPliesToEnd() {
+        return pliesToEnd;
+    }
+
+    @Override
+    public String toString() {
+        return outcome + " in " + pliesToEnd + " plies (score " + score + ")";
+    }
+}
@@ -0,0 +1,351 @@
+import java.util.Arrays;
+
+/**
+ * Exact solver for the standard 6x7 board.
+ *
+ * <p>Computes the game-theoretic value of any position with a null-window
+ * negamax search, a transposition table, threat-based move ordering and,
+ * optionally, a precomputed {@link PositionDatabase} of early and mid-game
+ * positions.</p>
+ *
+ * <p>Scores are from the point of view of the side to move. A score of 0 is a
+ * draw. A positive score is a win: the side to move places its winning stone
+ * when {@code 42 - 2 * score} or {@code 43 - 2 * score} stones are already on
+ * the board. A negative score is a loss, counted the same way for the
+ * opponent. See {@link #toResult(Position, int)}.</p>
+ *
+ * <p>Instances are not thread safe; use one per thread.</p>
+ */
+public class Solver {
+    private static final int CELLS = BitBoard.ROWS * BitBoard.COLUMNS;
+
+    /** Lowest score of a position that is not already lost. */
+    public static final int MIN_SCORE = -CELLS / 2 + 3;
+
+    /** Highest score of a position where the side to move cannot win at once. */
+    public static final int MAX_SCORE = (CELLS + 1) / 2 - 3;
+
+    /** Default number of transposition table entries, about 72 MB. */
+    public static final int DEFAULT_TABLE_SIZE = 8388593;
+
+    // Depth recorded for cached exact results, deeper than any search
+    private static final int EXACT_DEPTH = 255;
+
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+
+    private final long[] tableKeys;
+    private final byte[] tableValues;
+    private final Position[] stack = new Position[CELLS + 1];
+    private final long[][] moveCells = new long[CELLS + 1][BitBoard.COLUMNS];
+    private final int[][] moveScores = new int[CELLS + 1][BitBoard.COLUMNS];
+    private PositionDatabase database;
+    private AnalysisCache cache = AnalysisCache.shared();
+    private long nodes;
+
+    public Solver() {
+        this(DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * @param tableSize number of transposition table entries, ideally prime;
+     *                  each entry takes 9 bytes
+     */
+    public Solver(int tableSize) {
+        this.tableKeys = new long[tableSize];
+        this.tableValues = new byte[tableSize];
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = new Position();
+        }
+    }
+
+    /**
+     * Uses a position database to cut the search short. May be null.
+     */
+    public void setDatabase(PositionDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Sets the cache consulted by {@link #solve(Game)} and {@link #bestMove(Game)},
+     * the shared cache by default. May be null to always search.
+     */
+    public void setCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Clears the transposition table.
+     */
+    public void reset() {
+        Arrays.fill(tableKeys, 0);
+        Arrays.fill(tableValues, (byte) 0);
+    }
+
+    /**
+     * Solves the current position of a game.
+     *
+     * @throws IllegalArgumentException if the game is already over
+     */
+    public SolveResult solve(Game game) {
+        Position position = game.getPosition();
+        requireOpen(position);
+        if (cache == null) {
+            return toResult(position, solve(position));
+        }
+        long entry = cache.get(position, AnalysisCache.EXACT);
+        if (entry != AnalysisCache.MISS) {
+            return toResult(position, AnalysisCache.score(entry));
+        }
+        int score = solve(position);
+        cache.put(position, AnalysisCache.EXACT, -1, score, EXACT_DEPTH);
+        return toResult(position, score);
+    }
+
+    /**
+     * Returns the exact score of a position.
+     *
+     * @param position a position that is not already over
+     * @throws IllegalArgumentException if the game is already over
+     */
+    public int solve(Position position) {
+        requireOpen(position);
+        if (position.winningColumns() != 0) {
+            return (CELLS + 1 - position.getMoves()) / 2;
+        }
+        int known = lookupDatabase(position);
+        if (known != PositionDatabase.NOT_FOUND) {
+            return known;
+        }
+
+        stack[0].set(position);
+        int min = -(CELLS - position.getMoves()) / 2;
+        int max = (CELLS + 1 - position.getMoves()) / 2;
+        while (min < max) {
+            int med = min + (max - min) / 2;
+            if (med <= 0 && min / 2 < med) {
+                med = min / 2;
+            } else if (med >= 0 && max / 2 > med) {
+                med = max / 2;
+            }
+            int score = negamax(0, med, med + 1);
+            if (score <= med) {
+                max = score;
+            } else {
+                min = score;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Returns the exact score of every column, or {@link Integer#MIN_VALUE} for
+     * full columns.
+     *
+     * @throws IllegalArgumentException if the game is already over
+     */
+    public int[] analyze(Position position) {
+        requireOpen(position);
+        int[] scores = new int[BitBoard.COLUMNS];
+        for (int col = 0; col < BitBoard.COLUMNS; col++) {
+            if (!position.canPlay(col)) {
+                scores[col] = Integer.MIN_VALUE;
+            } else if (position.isWinningMove(col)) {
+                scores[col] = (CELLS + 1 - position.getMoves()) / 2;
+            } else {
+                Position child = position.copy();
+                child.play(col);
+                scores[col] = child.getMoves() == CELLS ? 0 : -solve(child);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Returns a perfect move: the fastest win, else a draw, else the slowest loss.
+     * Ties go to the column nearest the center.
+     *
+     * @throws IllegalArgumentException if the game is already over
+     */
+    public int bestMove(Position position) {
+        return bestOf(analyze(position));
+    }
+
+    /**
+     * Returns a perfect move for the current player of a game.
+     *
+     * @throws IllegalArgumentException if the game is already over
+     */
+    public int bestMove(Game game) {
+        Position position = game.getPosition();
+        requireOpen(position);
+        if (cache == null) {
+            return bestMove(position);
+        }
+        long entry = cache.get(position, AnalysisCache.EXACT);
+        if (AnalysisCache.bestMove(entry) >= 0) {
+            return AnalysisCache.bestMove(entry);
+        }
+        int[] scores = analyze(position);
+        int best = bestOf(scores);
+        if (best < 0) {
+            return best;
+        }
+        cache.put(position, AnalysisCache.EXACT, best, scores[best], EXACT_DEPTH);
+        return best;
+    }
+
+    private static void requireOpen(Position position) {
+        if (position.isTerminal()) {
+            throw new IllegalArgumentException("Position is already over");
+        }
+    }
+
+    private static int bestOf(int[] scores) {
+        int best = -1;
+        for (int col : COLUMN_ORDER) {
+            if (scores[col] != Integer.MIN_VALUE && (best < 0 || scores[col] > scores[best])) {
+                best = col;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Converts a score into an outcome and the number of plies until the game ends
+     * under perfect play.
+     */
+    public static SolveResult toResult(Position position, int score) {
+        int moves = position.getMoves();
+        if (score == 0) {
+            return new SolveResult(SolveResult.Outcome.DRAW, score, CELLS - moves);
+        }
+        int magnitude = Math.abs(score);
+        // Stones on the board when the winner plays the winning stone
+        int winningPly = CELLS + 1 - 2 * magnitude;
+        int winnerParity = score > 0 ? moves : moves + 1;
+        if (((winningPly - winnerParity) & 1) != 0) {
+            winningPly--;
+        }
+        SolveResult.Outcome outcome = score > 0 ? SolveResult.Outcome.WIN : SolveResult.Outcome.LOSS;
+        return new SolveResult(outcome, score, winningPly - moves + 1);
+    }
+
+    // Assumes the side to move cannot win immediately
+    private int negamax(int ply, int alpha, int beta) {
+        Position position = stack[ply];
+        nodes++;
+
+        long candidates = position.nonLosingCells();
+        if (candidates == 0) {
+            return -(CELLS - position.getMoves()) / 2;
+        }
+        if (position.getMoves() >= CELLS - 2) {
+            return 0;
+        }
+
+        int min = -(CELLS - 2 - position.getMoves()) / 2;
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta) {
+                return alpha;
+            }
+        }
+        int max = (CELLS - 1 - position.getMoves()) / 2;
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta) {
+                return beta;
+            }
+        }
+
+        long key = position.canonicalKey();
+        int slot = (int) (key % tableKeys.length);
+        if (tableKeys[slot] == key) {
+            int value = tableValues[slot];
+            if (value > MAX_SCORE - MIN_SCORE + 1) {
+                min = value + 2 * MIN_SCORE - MAX_SCORE - 2;
+                if (alpha < min) {
+                    alpha = min;
+                    if (alpha >= beta) {
+                        return alpha;
+                    }
+                }
+            } else {
+                max = value + MIN_SCORE - 1;
+                if (beta > max) {
+                    beta = max;
+                    if (alpha >= beta) {
+                        return beta;
+                    }
+                }
+            }
+        }
+
+        int known = lookupDatabase(position);
+        if (known != PositionDatabase.NOT_FOUND) {
+            return known;
+        }
+
+        int count = sortMoves(ply, position, candidates);
+        Position child = stack[ply + 1];
+        for (int i = 0; i < count; i++) {
+            child.set(position);
+            child.playCell(moveCells[ply][i]);
+            int score = -negamax(ply + 1, -beta, -alpha);
+            if (score >= beta) {
+                store(slot, key, score + MAX_SCORE - 2 * MIN_SCORE + 2);
+                return score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+        }
+        store(slot, key, alpha - MIN_SCORE + 1);
+        return alpha;
+    }
+
+    // Orders candidate moves by the number of threats they create, center first on ties
+    private int sortMoves(int ply, Position position, long candidates) {
+        long[] cells = moveCells[ply];
+        int[] scores = moveScores[ply];
+        int count = 0;
+        for (int i = COLUMN_ORDER.length - 1; i >= 0; i--) {
+            long cell = candidates & BitBoard.columnMask(COLUMN_ORDER[i]);
+            if (cell == 0) {
+                continue;
+            }
+            int score = Long.bitCount(BitBoard.winningCells(position.getCurrent() | cell, position.getMask()));
+            int pos = count++;
+            while (pos > 0 && scores[pos - 1] > score) {
+                cells[pos] = cells[pos - 1];
+                scores[pos] = scores[pos - 1];
+                pos--;
+            }
+            cells[pos] = cell;
+            scores[pos] = score;
+        }
+        // Highest score first
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            long cell = cells[i];
+            cells[i] = cells[j];
+            cells[j] = cell;
+        }
+        return count;
+    }
+
+    private void store(int slot, long key, int value) {
+        tableKeys[slot] = key;
+        tableValues[slot] = (byte) value;
+    }
+
+    private int lookupDatabase(Position position) {
+        if (database == null || position.getMoves() > database.getMaxPly()) {
+            return PositionDatabase.NOT_FOUND;
+        }
+        return database.lookup(position);
+    }
+}
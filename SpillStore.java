@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.LongStream;
+
+/**
+ * Directory of evicted games in compact form, one small file per game id.
+ *
+ * <p>Used by {@link GameHost} to keep idle games out of memory but still
+ * revivable.</p>
+ */
+public class SpillStore {
+    private final Path directory;
+
+    /**
+     * @throws UncheckedIOException if the directory cannot be created
+     */
+    public SpillStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(long id, byte[] state) throws IOException {
+        Path file = fileFor(id);
+        Path temp = directory.resolve(id + ".tmp");
+        Files.write(temp, state);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the stored state of a game, or null if it was never spilled.
+     */
+    public byte[] read(long id) throws IOException {
+        try {
+            return Files.readAllBytes(fileFor(id));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if a game is stored under the id, without reading it.
+     */
+    public boolean contains(long id) throws IOException {
+        return Files.exists(fileFor(id));
+    }
+
+    public void delete(long id) throws IOException {
+        Files.deleteIfExists(fileFor(id));
+    }
+
+    /**
+     * Returns the ids of every spilled game.
+     */
+    public long[] ids() throws IOException {
+        LongStream.Builder ids = LongStream.builder();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.game")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                ids.add(Long.parseLong(name.substring(0, name.length() - ".game".length())));
+            }
+        }
+        return ids.build().toArray();
+    }
+
+    private Path fileFor(long id) {
+        return directory.resolve(id + ".game");
+    }
+}
@@ -1,8 +1,12 @@
 import java.util.Scanner;
 
 public class TextClient {
-    private static ConnectFourJSON game = new ConnectFourImpl();
+    private static final int ROWS = 6;
+    private static final int COLUMNS = 7;
+
+    private static ConnectFourJSON game = Diagnostics.wrap(new ConnectFourImpl());
     private static Scanner scanner = new Scanner(System.in);
+    private static BoardRenderer renderer = new BoardRenderer(System.out, BoardRenderer.defaultMode());
 
     public static void main(String[] args) {
         System.out.println("=== Connect 4 Game Started (6x7) ===");
@@ -63,12 +67,10 @@ public class TextClient {
             return;
         }
 
-        printBoard(info.cells);
-        if (info.hasWinner()) {
-            System.out.println(info.winner.equals("RED") ? " RED WINS! " : " BLACK WINS! ");
-        } else {
-            System.out.printf("Next: %s%n%n", info.currentPlayer);
-        }
+        String status = info.hasWinner()
+                ? (info.winner.equals("RED") ? " RED WINS! " : " BLACK WINS! ")
+                : "Next: " + info.currentPlayer;
+        renderer.render(info.cells, ROWS, COLUMNS, status);
     }
 
     private static GameInfo parseState(String json) {
@@ -92,9 +94,9 @@ public class TextClient {
         String[] cellsRaw = json.substring(cellsStart, cellsEnd).split(",");
 
         // Parse cells to display format (. R B)
-        for (int i = 0; i < 42 && i < cellsRaw.length; i++) {
+        for (int i = 0; i < info.cells.length && i < cellsRaw.length; i++) {
             String cell = cellsRaw[i].replaceAll("[\"\\s]", "");
-            info.cells[i] = "RED".equals(cell) ? "R" : "BLACK".equals(cell) ? "B" : ".";
+            info.cells[i] = "RED".equals(cell) ? 'R' : "BLACK".equals(cell) ? 'B' : '.';
         }
 
         // Parse currentPlayer & winner
@@ -105,22 +107,8 @@ public class TextClient {
         return info;
     }
 
-    private static void printBoard(String[] cells) {
-        System.out.println("\n     0   1   2   3   4   5   6   ← Columns");
-        System.out.println("  +-----------------------------+");
-
-        for (int row = 0; row < 6; row++) {
-            System.out.print(" " + row + " |");
-            for (int col = 0; col < 7; col++) {
-                System.out.print(" " + cells[row * 7 + col] + "  ");
-            }
-            System.out.println("|");
-            System.out.println("  +-----------------------------+");
-        }
-    }
-
     private static class GameInfo {
-        String[] cells = new String[42];
+        char[] cells = new char[ROWS * COLUMNS];
         String currentPlayer = "RED";
         String winner = null;
         String error = null;
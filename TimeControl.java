@@ -0,0 +1,34 @@
+/**
+ * A per-player time control: a base time for the whole game plus an increment
+ * added after each move. A player whose time runs out loses.
+ */
+public final class TimeControl {
+    private final long baseMillis;
+    private final long incrementMillis;
+
+    /**
+     * @param baseMillis time each player starts with, greater than 0
+     * @param incrementMillis time added to a player's clock after each of their moves, at least 0
+     * @throws IllegalArgumentException if either value is out of range
+     */
+    public TimeControl(long baseMillis, long incrementMillis) {
+        if (baseMillis <= 0 || incrementMillis < 0) {
+            throw new IllegalArgumentException("Base time must be positive and increment cannot be negative");
+        }
+        this.baseMillis = baseMillis;
+        this.incrementMillis = incrementMillis;
+    }
+
+    public long getBaseMillis() {
+        return baseMillis;
+    }
+
+    public long getIncrementMillis() {
+        return incrementMillis;
+    }
+
+    @Override
+    public String toString() {
+        return baseMillis + "+" + incrementMillis + "ms";
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timing wheel for large numbers of coarse timers.
+ *
+ * <p>Time is divided into ticks, and timers are hashed into a ring of buckets
+ * by the tick they expire on, so scheduling and cancelling are O(1) no matter
+ * how many timers exist. Timers further away than one turn of the wheel stay
+ * in their bucket until the wheel comes round to their tick.</p>
+ *
+ * <p>Timers are intrusive: callers extend {@link Timer}, so scheduling
+ * allocates nothing. A single daemon thread started with {@link #start()}
+ * advances the wheel and runs expired timers, outside the wheel's lock.</p>
+ */
+public class TimingWheel {
+
+    /**
+     * A schedulable timer. A timer is in at most one wheel at a time;
+     * scheduling it again moves it.
+     */
+    public abstract static class Timer {
+        private Timer prev;
+        private Timer next;
+        private long deadlineTick;
+        private int bucket = -1;
+
+        /**
+         * Called on the wheel thread when the timer expires. The timer is no
+         * longer scheduled, and may schedule itself again.
+         */
+        protected abstract void onExpire();
+
+        public boolean isScheduled() {
+            return bucket >= 0;
+        }
+    }
+
+    private final long tickNanos;
+    private final Timer[] buckets;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+    private final List<Timer> expired = new ArrayList<>();
+    private long currentTick;
+    private Thread thread;
+
+    /**
+     * @param tickMillis timer resolution
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    public TimingWheel(long tickMillis, int wheelSize) {
+        this.tickNanos = tickMillis * 1_000_000;
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.buckets = new Timer[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedules a timer to expire after a delay, replacing any earlier schedule.
+     */
+    public synchronized void schedule(Timer timer, long delayMillis) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+        }
+        long tick = (System.nanoTime() - startNanos + delayMillis * 1_000_000 + tickNanos - 1) / tickNanos;
+        timer.deadlineTick = Math.max(tick, currentTick + 1);
+        int bucket = (int) (timer.deadlineTick & mask);
+        timer.bucket = bucket;
+        timer.prev = null;
+        timer.next = buckets[bucket];
+        if (timer.next != null) {
+            timer.next.prev = timer;
+        }
+        buckets[bucket] = timer;
+    }
+
+    /**
+     * Cancels a timer.
+     *
+     * @return true if the timer was scheduled
+     */
+    public synchronized boolean cancel(Timer timer) {
+        if (!timer.isScheduled()) {
+            return false;
+        }
+        unlink(timer);
+        return true;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            buckets[timer.bucket] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.bucket = -1;
+    }
+
+    /**
+     * Advances the wheel to the current time and runs every expired timer.
+     * Called by the wheel thread; only one thread may call it at a time.
+     *
+     * @return the number of timers that expired
+     */
+    public int advance() {
+        long targetTick = (System.nanoTime() - startNanos) / tickNanos;
+        synchronized (this) {
+            while (currentTick < targetTick) {
+                currentTick++;
+                Timer timer = buckets[(int) (currentTick & mask)];
+                while (timer != null) {
+                    Timer next = timer.next;
+                    if (timer.deadlineTick <= currentTick) {
+                        unlink(timer);
+                        expired.add(timer);
+                    }
+                    timer = next;
+                }
+            }
+        }
+        int count = expired.size();
+        for (int i = 0; i < count; i++) {
+            try {
+                expired.get(i).onExpire();
+            } catch (RuntimeException e) {
+                // One failing timer must not stop the others
+                EventLog.shared().error("timer-failed", EventLog.NO_GAME, e.toString());
+            }
+        }
+        expired.clear();
+        return count;
+    }
+
+    /**
+     * Starts the daemon thread that advances the wheel once per tick.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(() -> {
+            long tickMillis = Math.max(1, tickNanos / 1_000_000);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(tickMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                advance();
+            }
+        }, "timing-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the wheel thread. Scheduled timers stay scheduled.
+     */
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+}
@@ -1,10 +1,12 @@
 
+import java.util.Arrays;
 import java.util.Scanner;
 
 /**
 * Class Connect4
 *
-* <p> A utility class that represents a standard Connect4 game on a 6x7 grid. </p>
+* <p> A utility class that represents a standard Connect4 game on a 6x7 grid,
+* or a variant with another grid size or line length. </p>
 *
 * <p> A standard Connect4 is a two-player game where each players drops checkers
 * into columns of board in turns, and try to make horizontal, vertical or diagonal
@@ -46,8 +48,15 @@ import java.util.Scanner;
  */
 
 public final class Connect4{
-   private final int[][] board = new int[6][7];
-   private final int[] nextAvailableRow = {5, 5, 5, 5, 5, 5, 5};
+   private final int rows;
+   private final int columns;
+   private final int connect; // checkers in a line needed to win
+   private final int[][] board;
+   private final int[] nextAvailableRow;
+   private final int[] moves; // columns played, in order
+   private final StringBuilder boardText = new StringBuilder(); // reused by showBoard
+   private String shownBoard; // last showBoard result, null once the board changes
+   private int moveCount = 0;
    private int currentPlayer = 1; // 1 or 2
    private int winner = -1; // 1 or 2
    //true while game still playing, false when finished
@@ -56,10 +65,38 @@ public final class Connect4{
 
    /**
     *
-    * Initializes game session.
+    * Initializes game session on a standard 6x7 grid.
     *
     */
-   public Connect4(){}
+   public Connect4(){
+       this(6, 7, 4);
+   }
+
+   /**
+    *
+    * Initializes game session on a grid of any size.
+    *
+    * @param rows number of rows, at least 1
+    * @param columns number of columns, 1 to 9 so moves fit in move notation
+    * @param connect checkers in a line needed to win, at least 2 and no
+    *        more than fit on the grid
+    * @throws IllegalArgumentException if the grid or line length is out of range
+    */
+   public Connect4(int rows, int columns, int connect){
+       if (rows < 1 || columns < 1 || columns > 9){
+           throw new IllegalArgumentException("Grid must have at least 1 row and 1 to 9 columns");
+       }
+       if (connect < 2 || connect > Math.max(rows, columns)){
+           throw new IllegalArgumentException("Cannot connect " + connect + " on a " + rows + "x" + columns + " grid");
+       }
+       this.rows = rows;
+       this.columns = columns;
+       this.connect = connect;
+       this.board = new int[rows][columns];
+       this.nextAvailableRow = new int[columns];
+       this.moves = new int[rows * columns];
+       Arrays.fill(nextAvailableRow, rows - 1);
+   }
 
    /**
     * Returns current player.
@@ -84,6 +121,49 @@ public final class Connect4{
    public int getWinner(){
        return winner;
    }
+
+  /**
+    * Returns the occupant of a cell on the board.
+    *
+    * @param row the row, 0 at the top
+    * @param column the column, 0 at the left
+    * @return 0 if the cell is empty, otherwise 1 or 2 for the player
+    *         occupying it
+    */
+
+   public int getCell(int row, int column){
+       return board[row][column];
+   }
+
+  /**
+    * Returns the number of rows on the grid.
+    *
+    * @return the row count, 6 on the standard grid
+    */
+
+   public int getRows(){
+       return rows;
+   }
+
+  /**
+    * Returns the number of columns on the grid.
+    *
+    * @return the column count, 7 on the standard grid
+    */
+
+   public int getColumns(){
+       return columns;
+   }
+
+  /**
+    * Returns the number of checkers in a line needed to win.
+    *
+    * @return the line length, 4 in standard Connect4
+    */
+
+   public int getConnect(){
+       return connect;
+   }
   /**
     * Returns whether the game is still in progress.
     *
@@ -133,13 +213,15 @@ public final class Connect4{
        }
       
        for (int i = 0; i < nextAvailableRow.length; i++) {
-           nextAvailableRow[i] = 5;
+           nextAvailableRow[i] = rows - 1;
        }
       
+       shownBoard = null;
        currentPlayer = 1;
        winner = -1;
        playing = true;
        roundInProgress = true;
+       moveCount = 0;
    }
   /**
     * A formatted string representation of the game board.
@@ -152,17 +234,22 @@ public final class Connect4{
     * Column number are printed at the bottom.
     *
     * This method does not print the board directly. It returns a string for
-    * clients to decide how to display the output.
+    * clients to decide how to display the output. The string is only rebuilt
+    * after the board changes.
     *
     * @return A string of formatted game board.
     *
     */
 
    public String showBoard(){
-       StringBuilder sb =  new StringBuilder();
-       for(int r=0; r<6; r++){
+       if (shownBoard != null){
+           return shownBoard;
+       }
+       StringBuilder sb = boardText;
+       sb.setLength(0);
+       for(int r=0; r<rows; r++){
            sb.append("|");
-           for(int c=0; c<7; c++){
+           for(int c=0; c<columns; c++){
                if(board[r][c]==0){
                    sb.append("   ").append("|");
                }else if(board[r][c]==1){
@@ -174,11 +261,12 @@ public final class Connect4{
            sb.append("\n");
        }
        sb.append(" ");
-       for(int c=0; c<7; c++){
+       for(int c=0; c<columns; c++){
            sb.append(" ").append(c).append("  ");
        }
        sb.append("\n");
-       return sb.toString();
+       shownBoard = sb.toString();
+       return shownBoard;
    }
 
    /**
@@ -198,7 +286,9 @@ public final class Connect4{
 
            if ((isValidRow(row))) {
                board[row][column] = currentPlayer;
+               shownBoard = null;
                nextAvailableRow[column]--;
+               moves[moveCount++] = column;
                updateCurrentPlayer();
                checkSuccess();
 
@@ -214,6 +304,45 @@ public final class Connect4{
        return false;
    }
 
+  /**
+    * Returns the moves of the current round in move notation.
+    *
+    * Each move is written as the digit of the column played, numbered
+    * from 1 at the left, so a round that opened in the centre column
+    * starts with "4".
+    *
+    * @return the move string, empty before the first move
+    */
+
+   public String getMoveString(){
+       StringBuilder sb = new StringBuilder(moveCount);
+       for(int i=0; i<moveCount; i++){
+           sb.append((char) ('1' + moves[i]));
+       }
+       return sb.toString();
+   }
+
+  /**
+    * Makes a sequence of moves given in move notation.
+    *
+    * Moves are made in order with makeMove, stopping at the first character
+    * that is not a column digit (1-7 on the standard grid) or the first move
+    * that is invalid.
+    *
+    * @param notation the move string, for example "4453337"
+    * @return true if every move was made, false otherwise
+    */
+
+   public boolean makeMoves(String notation){
+       for(int i=0; i<notation.length(); i++){
+           int column = notation.charAt(i) - '1';
+           if(column < 0 || column >= columns || !makeMove(column)){
+               return false;
+           }
+       }
+       return true;
+   }
+
    //==== Helper Functions ======
    /**
     * Helper function to use in makemove.
@@ -229,8 +358,8 @@ public final class Connect4{
        int[] dr = { 0, 1, 1, 1 };
        int[] dc = { 1, 0, 1, -1 };
 
-       for(int r=0; r<6; r++){
-           for(int c=0; c<7; c++){
+       for(int r=0; r<rows; r++){
+           for(int c=0; c<columns; c++){
                int p = board[r][c];
                if(p==0) continue; //empty
                for(int i=0; i<4; i++){
@@ -239,15 +368,15 @@ public final class Connect4{
                    int nextc = c+dc[i];
 
                    //check endbound, avoid meaningless scanning
-                   int endr = r+3*dr[i];
-                   int endc = c+3*dc[i];
-                   if (endr<0 || endr>=6 || endc<0 || endc>=7) continue;
+                   int endr = r+(connect-1)*dr[i];
+                   int endc = c+(connect-1)*dc[i];
+                   if (endr<0 || endr>=rows || endc<0 || endc>=columns) continue;
 
                    //within bound & connect
-                   while(nextr>=0 && nextr<6 && nextc>=0 && nextc<7
+                   while(nextr>=0 && nextr<rows && nextc>=0 && nextc<columns
                        && board[nextr][nextc] == p){
                        count++;
-                       if(count==4){
+                       if(count==connect){
                            winner=p;
                            roundInProgress =false;
                            return true;
@@ -263,14 +392,14 @@ public final class Connect4{
    }
 
    private boolean isValidColumn(int column){
-       if (column >= 0 && column < 7){
+       if (column >= 0 && column < columns){
            return true;
        }
        return false;
    }
 
    private boolean isValidRow(int row){
-       if (row >= 0 && row < 6){
+       if (row >= 0 && row < rows){
            return true;
        }
        return false;
@@ -3,19 +3,21 @@ import java.util.Random;
 public class Connect4Client {
   public static void main(String[] args) {
     Connect4 game = new Connect4();
-    System.out.println(game.showBoard());
+    // Set -Dconnect4.render=headless for soak runs, plain for logs
+    BoardRenderer renderer = new BoardRenderer(System.out, BoardRenderer.defaultMode());
+    char[] cells = new char[game.getRows() * game.getColumns()];
+    render(game, renderer, cells, "New game");
 
     // BG: A round is an entire game
     // BG: isPlaying: whether rounds are ongoing
+    Random rand = new Random();
     while (game.isPlaying()) {
       while (game.isRoundInProgress()) {
         // make moves
 
-        Random rand = new Random();
-        int column = Math.round(rand.nextFloat() * 6);
-        System.out.println("Moving to  " + column);
+        int column = Math.round(rand.nextFloat() * (game.getColumns() - 1));
         game.makeMove(column);
-        System.out.println(game.showBoard());
+        render(game, renderer, cells, "Moving to  " + column);
         // try {
         //   Thread.sleep(0);
         // }
@@ -24,7 +26,7 @@ public class Connect4Client {
 
       if (game.getWinner() == -1 && !game.isRoundInProgress()) {
         // a draw
-        System.out.println(("draw"));
+        render(game, renderer, cells, "draw");
         game.stopPlaying();
       }
       else {
@@ -32,4 +34,16 @@ public class Connect4Client {
       }
     }
   }
+
+  // Copies the grid into cells, X and O as in showBoard, and draws it
+  private static void render(Connect4 game, BoardRenderer renderer, char[] cells, String status) {
+    int columns = game.getColumns();
+    for (int row = 0; row < game.getRows(); row++) {
+      for (int col = 0; col < columns; col++) {
+        int player = game.getCell(row, col);
+        cells[row * columns + col] = player == 1 ? 'X' : player == 2 ? 'O' : ' ';
+      }
+    }
+    renderer.render(cells, game.getRows(), columns, status);
+  }
 }
@@ -0,0 +1,36 @@
+/**
+ * {@link ConnectFourEngine} adapter for team 2's {@link Connect4}.
+ *
+ * <p>This class depends on the root sources, so compile both directories
+ * together, e.g. {@code javac -d out *.java team2/*.java}.</p>
+ */
+public class Connect4Engine implements ConnectFourEngine {
+    private final Connect4 game = new Connect4();
+
+    @Override
+    public void reset() {
+        game.resetGame();
+    }
+
+    @Override
+    public boolean play(int column) {
+        return game.makeMove(column);
+    }
+
+    @Override
+    public int winner() {
+        int winner = game.getWinner();
+        if (winner == 1) {
+            return FIRST;
+        }
+        if (winner == 2) {
+            return SECOND;
+        }
+        return game.isRoundInProgress() ? EMPTY : DRAW;
+    }
+
+    @Override
+    public int cell(int row, int column) {
+        return game.getCell(row, column);
+    }
+}